@@ -4,35 +4,31 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import de.fraunhofer.fokus.ids.enums.FileType;
 import de.fraunhofer.fokus.ids.messages.ResourceRequest;
 import de.fraunhofer.fokus.ids.models.*;
-import de.fraunhofer.fokus.ids.persistence.entities.DataSource;
-import de.fraunhofer.fokus.ids.persistence.entities.Dataset;
+import de.fraunhofer.fokus.ids.models.MultipartMessage;
 import de.fraunhofer.fokus.ids.persistence.entities.Distribution;
-import de.fraunhofer.fokus.ids.persistence.entities.serialization.DataSourceSerializer;
 import de.fraunhofer.fokus.ids.persistence.managers.DataAssetManager;
-import de.fraunhofer.fokus.ids.persistence.managers.DataSourceManager;
 import de.fraunhofer.fokus.ids.services.ConfigService;
 import de.fraunhofer.fokus.ids.services.IDSService;
+import de.fraunhofer.fokus.ids.services.SelfDescriptionCache;
+import de.fraunhofer.fokus.ids.services.authAdapter.TokenValidationCache;
+import de.fraunhofer.fokus.ids.services.datasourceAdapter.AdapterResponse;
 import de.fraunhofer.fokus.ids.services.datasourceAdapter.DataSourceAdapterService;
 import de.fraunhofer.fokus.ids.services.datasourceAdapter.DataSourceAdapterDownloadService;
 import de.fraunhofer.fokus.ids.utils.models.IDSMessage;
-import de.fraunhofer.fokus.ids.utils.services.authService.AuthAdapterService;
 import de.fraunhofer.iais.eis.*;
-import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
 import io.vertx.core.*;
-import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.json.jackson.DatabindCodec;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import org.apache.http.Header;
-import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
 
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.text.ParseException;
 import java.util.Optional;
 
 /**
@@ -40,24 +36,24 @@ import java.util.Optional;
  */
 public class ConnectorController {
 
+	private static final int DEFAULT_PAGE_SIZE = 100;
+	private static final int MAX_PAGE_SIZE = 500;
 	private Logger LOGGER = LoggerFactory.getLogger(ConnectorController.class.getName());
 	private IDSService idsService;
 	private DataAssetManager dataAssetManager;
-	private DataSourceManager dataSourceManager;
 	private DataSourceAdapterService dataSourceAdapterService;
-    private AuthAdapterService authAdapterService;
+    private TokenValidationCache tokenValidationCache;
     private ConfigService configService;
-	private Serializer serializer;
 	private DataSourceAdapterDownloadService dataSourceAdapterDownloadService;
+	private boolean artifactPassThrough;
 
-	public ConnectorController(Vertx vertx){
+	public ConnectorController(Vertx vertx, boolean artifactPassThrough){
+		this.artifactPassThrough = artifactPassThrough;
 		this.idsService = new IDSService(vertx);
-		this.authAdapterService = AuthAdapterService.createProxy(vertx, Constants.AUTHADAPTER_SERVICE);
+		this.tokenValidationCache = TokenValidationCache.getInstance(vertx);
 		this.dataAssetManager = new DataAssetManager(vertx);
-		this.dataSourceManager = new DataSourceManager();
 		this.dataSourceAdapterService = DataSourceAdapterService.createProxy(vertx, Constants.DATASOURCEADAPTER_SERVICE);
 		this.configService = new ConfigService(vertx);
-		this.serializer = new Serializer();
 		this.dataSourceAdapterDownloadService = new DataSourceAdapterDownloadService(vertx);
 		DatabindCodec.prettyMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
 	}
@@ -78,10 +74,29 @@ public class ConnectorController {
 				artifactResponsePromise.fail(reply.cause());
 			}
 		});
-		Promise<File> filePromise = Promise.promise();
-		Future<File> fileFuture = filePromise.future();
-		payload(false,id, extension, fileFuture, null);
-		idsService.handleDataMessage(header.getId(), artifactResponseFuture, fileFuture, id, httpEntityAsyncResult -> replyMessage(httpEntityAsyncResult,httpServerResponse));
+		if (artifactPassThrough) {
+			Promise<AdapterResponse> streamPromise = Promise.promise();
+			streamPayload(id, streamPromise);
+			idsService.handleDataStreamMessage(header.getId(), artifactResponseFuture, streamPromise.future(), id, multipartMessageAsyncResult -> replyMessage(multipartMessageAsyncResult,httpServerResponse));
+		} else {
+			Promise<File> filePromise = Promise.promise();
+			Future<File> fileFuture = filePromise.future();
+			payload(false,id, extension, fileFuture, null);
+			idsService.handleDataMessage(header.getId(), artifactResponseFuture, fileFuture, id, multipartMessageAsyncResult -> replyMessage(multipartMessageAsyncResult,httpServerResponse));
+		}
+	}
+
+	private void streamPayload(Long id, Handler<AsyncResult<AdapterResponse>> resultHandler) {
+		dataAssetManager.findRoute(id, routeReply -> {
+			if (routeReply.succeeded()) {
+				ArtifactRoute route = routeReply.result();
+				dataSourceAdapterDownloadService.openFileStream(route.getDataSource().getDatasourceType(), route.getAdapter(),
+						buildResourceRequest(route, FileType.MULTIPART), resultHandler);
+			} else {
+				LOGGER.error(routeReply.cause());
+				resultHandler.handle(Future.failedFuture(routeReply.cause()));
+			}
+		});
 	}
 
 	public void payload(boolean download,long id, String extension, Handler<AsyncResult<File>> resultHandler, HttpServerResponse httpServerResponse){
@@ -120,7 +135,7 @@ public class ConnectorController {
 			} else {
 				LOGGER.error("Malformed message");
 				idsService.handleRejectionMessage(header.getId(), RejectionReason.MALFORMED_MESSAGE,
-						httpEntityAsyncResult -> replyMessage(httpEntityAsyncResult,httpServerResponse));
+						multipartMessageAsyncResult -> replyMessage(multipartMessageAsyncResult,httpServerResponse));
 			}
 		}
 	}
@@ -129,19 +144,19 @@ public class ConnectorController {
 		if (input.isPresent() && input.get().getHeader().isPresent()) {
 			Message header = input.get().getHeader().get();
 			String token = "abc123";
-			authAdapterService.isAuthenticated(header.getSecurityToken() == null?token:header.getSecurityToken().getTokenValue(), authreply -> {
+			tokenValidationCache.isAuthenticated(header.getSecurityToken() == null?token:header.getSecurityToken().getTokenValue(), authreply -> {
 				if (authreply.succeeded()) {
 					if (header instanceof DescriptionRequestMessage) {
-						multiPartAbout(header, httpEntityAsyncResult -> replyMessage(httpEntityAsyncResult,httpServerResponse));
+						multiPartAbout(header, multipartMessageAsyncResult -> replyMessage(multipartMessageAsyncResult,httpServerResponse));
 					} else if (header instanceof ArtifactRequestMessage) {
 						data(header, "", httpServerResponse);
 					} else {
 						LOGGER.error("Messagetype not supported.");
-						idsService.handleRejectionMessage(header.getId(), RejectionReason.MESSAGE_TYPE_NOT_SUPPORTED, httpEntityAsyncResult -> replyMessage(httpEntityAsyncResult,httpServerResponse));
+						idsService.handleRejectionMessage(header.getId(), RejectionReason.MESSAGE_TYPE_NOT_SUPPORTED, multipartMessageAsyncResult -> replyMessage(multipartMessageAsyncResult,httpServerResponse));
 					}
 				} else {
 					LOGGER.error("Not authenticated.");
-					idsService.handleRejectionMessage(header.getId(), RejectionReason.NOT_AUTHENTICATED, httpEntityAsyncResult -> replyMessage(httpEntityAsyncResult,httpServerResponse));
+					idsService.handleRejectionMessage(header.getId(), RejectionReason.NOT_AUTHENTICATED, multipartMessageAsyncResult -> replyMessage(multipartMessageAsyncResult,httpServerResponse));
 				}
 			});
 		} else {
@@ -153,19 +168,26 @@ public class ConnectorController {
 				replyMessage(Future.failedFuture(e),httpServerResponse);
 			}
 			LOGGER.error("Malformed message");
-			idsService.handleRejectionMessage(uri, RejectionReason.MALFORMED_MESSAGE, httpEntityAsyncResult -> replyMessage(httpEntityAsyncResult,httpServerResponse));
+			idsService.handleRejectionMessage(uri, RejectionReason.MALFORMED_MESSAGE, multipartMessageAsyncResult -> replyMessage(multipartMessageAsyncResult,httpServerResponse));
 		}
 	}
 
-	public void multiPartAbout(Message header, Handler<AsyncResult<HttpEntity>> resultHandler) {
-		Promise<Connector> connectorPromise = Promise.promise();
-		Future<Connector> connectorFuture = connectorPromise.future();
+	public void multiPartAbout(Message header, Handler<AsyncResult<MultipartMessage>> resultHandler) {
+		Promise<String> connectorPromise = Promise.promise();
+		Future<String> connectorFuture = connectorPromise.future();
 		Promise<Message> responsePromise = Promise.promise();
 		Future<Message> responseFuture = responsePromise.future();
 
+		URI requestedElement = header instanceof DescriptionRequestMessage
+				? ((DescriptionRequestMessage) header).getRequestedElement() : null;
+
 		configService.getConfiguration(reply -> {
 			if(reply.succeeded()) {
-				idsService.getConnector(reply.result(), connectorFuture);
+				if (requestedElement == null) {
+					idsService.getConnectorJson(reply.result(), connectorFuture);
+				} else {
+					idsService.getElementJson(reply.result(), requestedElement, connectorFuture);
+				}
 				idsService.getSelfDescriptionResponse(reply.result(), header.getId(), responseFuture);
 			} else {
 				LOGGER.info(reply.cause());
@@ -176,25 +198,46 @@ public class ConnectorController {
 		idsService.handleAboutMessage(header.getId(), responseFuture, connectorFuture, resultHandler);
 	}
 
-	public void about(Handler<AsyncResult<String>> resultHandler) {
+	/**
+	 * Streams the self-description to the response. If page or size are given, only the offered resources of that
+	 * page are included and a Link header points to the next page.
+	 */
+	public void about(Integer page, Integer size, HttpServerResponse response) {
 		configService.getConfiguration(configReply -> {
 			if(configReply.succeeded()) {
-				idsService.getConnector(configReply.result(), reply -> {
+				idsService.getSelfDescription(configReply.result(), reply -> {
 					if (reply.succeeded()) {
-						try {
-							resultHandler.handle(Future.succeededFuture(serializer.serialize(reply.result())));
-						} catch (IOException e) {
-							LOGGER.error(e);
-							resultHandler.handle(Future.failedFuture(e));
+						SelfDescriptionCache.SelfDescription selfDescription = reply.result();
+						int offset = 0;
+						int limit = selfDescription.getResourceCount();
+						if (page != null || size != null) {
+							limit = size != null ? Math.min(Math.max(size, 1), MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+							// Computed in long, a large page would overflow and wrap around to a wrong page.
+							offset = (int) Math.min((long) (page != null ? page : 0) * limit, selfDescription.getResourceCount());
+							if ((long) offset + limit < selfDescription.getResourceCount()) {
+								int nextPage = (page != null ? page : 0) + 1;
+								response.putHeader("Link", "<" + configReply.result().getString("url")
+										+ "/about?page=" + nextPage + "&size=" + limit + ">; rel=\"next\"");
+							}
 						}
+						response.putHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
+						response.setChunked(true);
+						selfDescription.writeTo(response, offset, limit, writeReply -> {
+							if (writeReply.succeeded()) {
+								response.end();
+							} else {
+								LOGGER.error("Self-description could not be written.", writeReply.cause());
+								response.close();
+							}
+						});
 					} else {
 						LOGGER.error("Connector Object could not be retrieved.", reply.cause());
-						resultHandler.handle(Future.failedFuture(reply.cause()));
+						response.setStatusCode(500).end();
 					}
 				});
 			} else {
 				LOGGER.error(configReply.cause());
-				resultHandler.handle(Future.failedFuture(configReply.cause()));
+				response.setStatusCode(500).end();
 			}
 		});
 	}
@@ -214,66 +257,55 @@ public class ConnectorController {
 	}
 
 	private void getPayload(boolean download, Long id, FileType fileType, Handler<AsyncResult<File>> resultHandler, HttpServerResponse httpServerResponse) {
-		dataAssetManager.findDistributionById(id, distReply -> {
-			if (distReply.succeeded()) {
-				Distribution distribution = Json.decodeValue(distReply.result().toString(), Distribution.class);
-				dataAssetManager.findDatasetByResourceId(distribution.getDatasetId(), datReply -> {
-					if (datReply.succeeded()) {
-						Dataset dataset = Json.decodeValue(datReply.result().toString(), Dataset.class);
-						dataSourceManager.findById(dataset.getSourceId(), reply2 -> {
-							if (reply2.succeeded()) {
-								DataSource dataSource = null;
-								try {
-									dataSource = DataSourceSerializer.deserialize(reply2.result());
-								} catch (ParseException e) {
-									LOGGER.error(e);
-									resultHandler.handle(Future.failedFuture(e));
-								}
-
-								ResourceRequest request = new ResourceRequest();
-								request.setDataSource(dataSource);
-								request.setDataAsset(distribution);
-								request.setFileType(fileType);
-								if (download){
-									dataSourceAdapterDownloadService.getFile(dataSource.getDatasourceType(),
-											new JsonObject(Json.encode(request)),httpServerResponse);
-								}else {
-									dataSourceAdapterService.getFile(dataSource.getDatasourceType(), new JsonObject(Json.encode(request)), reply3 -> {
-										if (reply3.succeeded()) {
-											resultHandler.handle(Future.succeededFuture(new File(reply3.result())));
-										} else {
-											LOGGER.error("FileContent could not be retrieved.", reply3.cause());
-											resultHandler.handle(Future.failedFuture(reply3.cause()));
-										}
-									});
-								}
-
-							} else {
-								LOGGER.error("DataAsset could not be retrieved.", reply2.cause());
-								resultHandler.handle(Future.failedFuture(reply2.cause()));
-							}
-						});
-					}
-				});
+		dataAssetManager.findRoute(id, routeReply -> {
+			if (routeReply.succeeded()) {
+				ArtifactRoute route = routeReply.result();
+				JsonObject request = buildResourceRequest(route, fileType);
+				String dataSourceType = route.getDataSource().getDatasourceType();
+				if (download){
+					dataSourceAdapterDownloadService.getFile(dataSourceType, route.getAdapter(), request, httpServerResponse);
+				}else {
+					dataSourceAdapterService.getFile(dataSourceType, request, reply3 -> {
+						if (reply3.succeeded()) {
+							resultHandler.handle(Future.succeededFuture(new File(reply3.result())));
+						} else {
+							LOGGER.error("FileContent could not be retrieved.", reply3.cause());
+							resultHandler.handle(Future.failedFuture(reply3.cause()));
+						}
+					});
+				}
 			} else {
-				LOGGER.error(distReply.cause());
-				resultHandler.handle(Future.failedFuture(distReply.cause()));
+				LOGGER.error(routeReply.cause());
+				resultHandler.handle(Future.failedFuture(routeReply.cause()));
 			}
 		});
 	}
 
-	private void replyMessage(AsyncResult<HttpEntity> result, HttpServerResponse response){
+	private JsonObject buildResourceRequest(ArtifactRoute route, FileType fileType) {
+		ResourceRequest request = new ResourceRequest();
+		request.setDataSource(route.getDataSource());
+		request.setDataAsset(route.getDistribution());
+		request.setFileType(fileType);
+		return new JsonObject(Json.encode(request));
+	}
+
+	private void replyMessage(AsyncResult<MultipartMessage> result, HttpServerResponse response){
 		if(result.succeeded()){
 			if(result.result() != null) {
-				try(ByteArrayOutputStream baos = new ByteArrayOutputStream()){
-					Header contentTypeHeader =  result.result().getContentType();
-					result.result().writeTo(baos);
-					response.putHeader(contentTypeHeader.getName(), contentTypeHeader.getValue());
-					response.end(Buffer.buffer(baos.toByteArray()));
-				} catch (IOException e) {
-					LOGGER.error(e);
-					response.setStatusCode(500);
-					response.end();
+				MultipartMessage message = result.result();
+				response.putHeader(HttpHeaders.CONTENT_TYPE, message.contentType());
+				if (message.isBuffered()) {
+					response.end(message.toBuffer());
+				} else {
+					response.setChunked(true);
+					message.writeTo(response, writeReply -> {
+						if (writeReply.succeeded()) {
+							response.end();
+						} else {
+							LOGGER.error("Multipart response could not be written.", writeReply.cause());
+							response.close();
+						}
+					});
 				}
 			}
 		}
@@ -286,7 +318,7 @@ public class ConnectorController {
 	public void resource(long distributionId, String dataSourceType, HttpServerResponse response) {
 		dataAssetManager.findDistributionById(distributionId, distReply -> {
 			if(distReply.succeeded()){
-				Distribution distribution = Json.decodeValue(distReply.result().toString(), Distribution.class);
+				Distribution distribution = distReply.result();
 				dataSourceAdapterDownloadService.downloadFile(dataSourceType, distribution.getResourceId(), distribution.getDatasetId(),
 						distribution.getFilename(), response);
 			}else {
@@ -3,9 +3,10 @@ package de.fraunhofer.fokus.ids.controllers;
 import de.fraunhofer.fokus.ids.messages.DataAssetCreateMessage;
 import de.fraunhofer.fokus.ids.models.Constants;
 import de.fraunhofer.fokus.ids.models.DataAssetDescription;
+import de.fraunhofer.fokus.ids.models.DataAssetFilter;
+import de.fraunhofer.fokus.ids.models.SpooledFile;
 import de.fraunhofer.fokus.ids.persistence.entities.DataSource;
 import de.fraunhofer.fokus.ids.persistence.entities.Dataset;
-import de.fraunhofer.fokus.ids.persistence.entities.serialization.DataSourceSerializer;
 import de.fraunhofer.fokus.ids.persistence.enums.DataAssetStatus;
 import de.fraunhofer.fokus.ids.persistence.enums.JobStatus;
 import de.fraunhofer.fokus.ids.persistence.managers.DataAssetManager;
@@ -20,7 +21,6 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
-import java.text.ParseException;
 import java.util.*;
 
 /**
@@ -34,8 +34,12 @@ public class DataAssetController {
     private DataSourceManager dataSourceManager;
     private JobManager jobManager;
     private BrokerController brokerController;
+    private Vertx vertx;
+    private String uploadDirectory;
 
-    public DataAssetController(Vertx vertx) {
+    public DataAssetController(Vertx vertx, String uploadDirectory) {
+        this.vertx = vertx;
+        this.uploadDirectory = uploadDirectory;
         dataAssetManager = new DataAssetManager(vertx);
         jobManager = new JobManager();
         this.dataSourceManager = new DataSourceManager();
@@ -79,6 +83,7 @@ public class DataAssetController {
 
     public void add(DataAssetDescription dataAssetDescription, String licenceurl, String licencetitle, Handler<AsyncResult<JsonObject>> resultHandler) {
         if (dataAssetDescription.getData().isEmpty()) {
+            deleteSpooledFiles(dataAssetDescription.getFiles());
             JsonObject jO = new JsonObject();
             jO.put("status", "error");
             jO.put("text", "Bitte geben Sie eine Resource-ID ein!");
@@ -98,6 +103,7 @@ public class DataAssetController {
                     resultHandler.handle(Future.succeededFuture(jO));
                 } else {
                     LOGGER.error("Der Job konnte nicht erstellt werden!", jobReply.cause());
+                    deleteSpooledFiles(dataAssetDescription.getFiles());
                     JsonObject jO = new JsonObject();
                     jO.put("status", "error");
                     jO.put("text", "Der Job konnte nicht erstellt werden!");
@@ -108,23 +114,18 @@ public class DataAssetController {
     }
 
     private void initiateDataAssetCreation(Handler<AsyncResult<Dataset>> next, DataAssetDescription dataAssetDescription) {
-        dataSourceManager.findById(Integer.toUnsignedLong(dataAssetDescription.getSourceId()), dataSourceReply -> {
+        dataSourceManager.findEntityById(Integer.toUnsignedLong(dataAssetDescription.getSourceId()), dataSourceReply -> {
             if (dataSourceReply.succeeded()) {
-                DataSource dataSource;
-                try {
-                    dataSource = DataSourceSerializer.deserialize(dataSourceReply.result());
-                } catch (ParseException e) {
-                    LOGGER.error(e);
-                    next.handle(Future.failedFuture(e));
-                    return;
-                }
+                DataSource dataSource = dataSourceReply.result();
 
                 DataAssetCreateMessage mes = new DataAssetCreateMessage();
                 mes.setData(new JsonObject(dataAssetDescription.getData()));
-                mes.setFiles(dataAssetDescription.getFiles());
                 mes.setDataSource(dataSource);
                 final long datasourceId = dataSource.getId();
-                dataSourceAdapterService.createDataAsset(dataSource.getDatasourceType(), new JsonObject(Json.encode(mes)), dataAssetCreateReply -> {
+                JsonObject message = new JsonObject(Json.encode(mes))
+                        .put("files", toFileReferences(dataAssetDescription.getFiles()));
+                dataSourceAdapterService.createDataAsset(dataSource.getDatasourceType(), message, dataAssetCreateReply -> {
+                    deleteSpooledFiles(dataAssetDescription.getFiles());
                     if (dataAssetCreateReply.succeeded()) {
                         if (dataAssetCreateReply.result() == null) {
                             LOGGER.error("No DataAsset created.");
@@ -141,11 +142,39 @@ public class DataAssetController {
                 });
             } else {
                 LOGGER.error(dataSourceReply.cause());
+                deleteSpooledFiles(dataAssetDescription.getFiles());
                 next.handle(Future.failedFuture(dataSourceReply.cause()));
             }
         });
     }
 
+    private JsonArray toFileReferences(Set<SpooledFile> files) {
+        JsonArray references = new JsonArray();
+        if (files != null) {
+            for (SpooledFile file : files) {
+                references.add(JsonObject.mapFrom(file));
+            }
+        }
+        return references;
+    }
+
+    private void deleteSpooledFiles(Set<SpooledFile> files) {
+        if (files == null) {
+            return;
+        }
+        for (SpooledFile file : files) {
+            if (!SpooledFile.isInUploadDirectory(file.getPath(), uploadDirectory)) {
+                LOGGER.error("Spooled file " + file.getPath() + " is outside of the upload directory and is not deleted.");
+                continue;
+            }
+            vertx.fileSystem().delete(file.getPath(), ar -> {
+                if (ar.failed()) {
+                    LOGGER.error("Spooled file " + file.getPath() + " could not be deleted.", ar.cause());
+                }
+            });
+        }
+    }
+
 	private void createDataAsset(long jobId, AsyncResult<Dataset> res, String licenceurl, String licencetitle) {
 		if (res.succeeded()) {
 		    Dataset dataAsset = res.result();
@@ -158,7 +187,7 @@ public class DataAssetController {
 					LOGGER.info("DataAsset was successfully inserted to the DB.");
 					jobManager.updateStatus(jobId, JobStatus.FINISHED, reply2 -> {});
 				} else {
-					LOGGER.error("DataAsset insertion failed.", res.cause());
+					LOGGER.error("DataAsset insertion failed.", reply.cause());
 					jobManager.updateStatus(jobId, JobStatus.ERROR, reply2 -> {});
 				}
 			});
@@ -170,70 +199,45 @@ public class DataAssetController {
 
 
 	public void publishAll(Handler<AsyncResult<JsonObject>> resultHandler) {
-        dataAssetManager.findAll(reply -> {
-            if (reply.succeeded()) {
-                ArrayList<Future> publishFutures = new ArrayList<>();
-                for (int i = 0; i < reply.result().size(); i++) {
-                    Dataset da = Json.decodeValue(reply.result().getJsonObject(i).toString(), Dataset.class);
-                    Promise promise = Promise.promise();
-                    dataAssetManager.changeStatus(DataAssetStatus.PUBLISHED, da.getId(), promise.future());
-                }
-                CompositeFuture.all(publishFutures).onComplete(reply2 -> {
-                    if (reply2.succeeded()) {
-                        brokerController.update(reply3 -> {
-                            if (reply3.succeeded()) {
-                                JsonObject jO = new JsonObject();
-                                jO.put("success", "Data Assets wurden veröffentlicht.");
-                                resultHandler.handle(Future.succeededFuture(jO));
-                            } else {
-                                LOGGER.error(reply3.cause());
-                                resultHandler.handle(Future.failedFuture(reply3.cause()));
-                            }
-                        });
-                    } else {
-                        LOGGER.error(reply2.cause());
-                        resultHandler.handle(Future.failedFuture(reply.cause()));
-                    }
-                });
-            } else {
-                LOGGER.error(reply.cause());
-                resultHandler.handle(Future.failedFuture(reply.cause()));
-            }
-        });
-    }
+		changeStatus(DataAssetStatus.PUBLISHED, null, "Data Assets wurden veröffentlicht.", resultHandler);
+	}
 
-    public void unpublishAll(Handler<AsyncResult<JsonObject>> resultHandler) {
-        dataAssetManager.findAll(reply -> {
-            if (reply.succeeded()) {
-                ArrayList<Future> publishFutures = new ArrayList<>();
-                for (int i = 0; i < reply.result().size(); i++) {
-                    Dataset da = Json.decodeValue(reply.result().getJsonObject(i).toString(), Dataset.class);
-                    Promise promise = Promise.promise();
-                    dataAssetManager.changeStatus(DataAssetStatus.APPROVED, da.getId(), promise.future());
-                }
-                CompositeFuture.all(publishFutures).onComplete(reply2 -> {
-                    if (reply2.succeeded()) {
-                        brokerController.update(reply3 -> {
-                            if (reply3.succeeded()) {
-                                JsonObject jO = new JsonObject();
-                                jO.put("success", "Data Assets wurden zurückgehalten.");
-                                resultHandler.handle(Future.succeededFuture(jO));
-                            } else {
-                                LOGGER.error(reply3.cause());
-                                resultHandler.handle(Future.failedFuture(reply3.cause()));
-                            }
-                        });
-                    } else {
-                        LOGGER.error(reply2.cause());
-                        resultHandler.handle(Future.failedFuture(reply.cause()));
-                    }
-                });
-            } else {
-                LOGGER.error(reply.cause());
-                resultHandler.handle(Future.failedFuture(reply.cause()));
-            }
-        });
-    }
+	public void unpublishAll(Handler<AsyncResult<JsonObject>> resultHandler) {
+		changeStatus(DataAssetStatus.APPROVED, null, "Data Assets wurden zurückgehalten.", resultHandler);
+	}
+
+	public void publishBulk(List<Long> ids, Handler<AsyncResult<JsonObject>> resultHandler) {
+		changeStatus(DataAssetStatus.PUBLISHED, ids, "Data Assets wurden veröffentlicht.", resultHandler);
+	}
+
+	public void unpublishBulk(List<Long> ids, Handler<AsyncResult<JsonObject>> resultHandler) {
+		changeStatus(DataAssetStatus.APPROVED, ids, "Data Assets wurden zurückgehalten.", resultHandler);
+	}
+
+	/**
+	 * Changes the status of the given data assets, or of all data assets if ids is null, in one statement
+	 * and updates the broker once afterwards.
+	 */
+	private void changeStatus(DataAssetStatus status, List<Long> ids, String successText, Handler<AsyncResult<JsonObject>> resultHandler) {
+		dataAssetManager.changeStatus(status, ids, reply -> {
+			if (reply.succeeded()) {
+				brokerController.update(reply2 -> {
+					if (reply2.succeeded()) {
+						JsonObject jO = new JsonObject();
+						jO.put("success", successText);
+						jO.put("count", reply.result().size());
+						resultHandler.handle(Future.succeededFuture(jO));
+					} else {
+						LOGGER.error(reply2.cause());
+						resultHandler.handle(Future.failedFuture(reply2.cause()));
+					}
+				});
+			} else {
+				LOGGER.error(reply.cause());
+				resultHandler.handle(Future.failedFuture(reply.cause()));
+			}
+		});
+	}
 
 	public void publish(Long id, Handler<AsyncResult<JsonObject>> resultHandler) {
 		dataAssetManager.changeStatus(DataAssetStatus.PUBLISHED, id, reply -> {
@@ -282,7 +286,7 @@ public class DataAssetController {
 	public void generateTags(Long id, Handler<AsyncResult<JsonObject>> resultHandler) {
 		dataAssetManager.findDatasetById(id, dataAssetReply -> {
 			if(dataAssetReply.succeeded()){
-				Dataset ds = Json.decodeValue(dataAssetReply.result().toString(), Dataset.class);
+				Dataset ds = dataAssetReply.result();
 				dataAssetManager.updateTagsFromDescription(ds, resultHandler);			
 			}else {
 				resultHandler.handle(Future.failedFuture(dataAssetReply.cause()));
@@ -293,7 +297,7 @@ public class DataAssetController {
 	public void getById(Long id, Handler<AsyncResult<JsonObject>> resultHandler) {
 		dataAssetManager.findDatasetById(id, dataAssetReply -> {
 			if(dataAssetReply.succeeded()){
-				Dataset ds = Json.decodeValue(dataAssetReply.result().toString(), Dataset.class);
+				Dataset ds = dataAssetReply.result();
 				JsonObject jO = new JsonObject();
 				jO.put("description", ds.getDescription());
 				jO.put("tags", ds.getTags().toString());
@@ -308,7 +312,7 @@ public class DataAssetController {
 	public void delete(Long id, Handler<AsyncResult<JsonObject>> resultHandler) {
 		dataAssetManager.findDatasetById(id, dataAssetReply -> {
 			if(dataAssetReply.succeeded()){
-			    Dataset ds = Json.decodeValue(dataAssetReply.result().toString(), Dataset.class);
+			    Dataset ds = dataAssetReply.result();
 				dataSourceManager.findById(ds.getSourceId(), reply2 -> {
 				    if(reply2.succeeded()){
                         Promise<JsonObject> serviceDeletePromise = Promise.promise();
@@ -348,6 +352,18 @@ public class DataAssetController {
 		});
 	}
 
+	public void page(DataAssetFilter filter, Handler<AsyncResult<JsonObject>> resultHandler) {
+		dataAssetManager.findPage(filter, reply -> {
+			if (reply.succeeded()) {
+				resultHandler.handle(Future.succeededFuture(reply.result()));
+			}
+			else {
+				LOGGER.error("Data asset page could not be read.", reply.cause());
+				resultHandler.handle(Future.failedFuture(reply.cause()));
+			}
+		});
+	}
+
 	public void index(Handler<AsyncResult<JsonArray>> resultHandler) {
 		dataAssetManager.findAll(reply -> {
 			if (reply.succeeded()) {
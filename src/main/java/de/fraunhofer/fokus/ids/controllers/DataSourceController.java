@@ -7,7 +7,12 @@ import de.fraunhofer.fokus.ids.main.ApplicationConfig;
 import de.fraunhofer.fokus.ids.persistence.entities.DataSource;
 import de.fraunhofer.fokus.ids.persistence.managers.DataSourceManager;
 import de.fraunhofer.fokus.ids.persistence.util.DatabaseConnector;
+import de.fraunhofer.fokus.ids.services.ArtifactRouteCache;
 import de.fraunhofer.fokus.ids.services.database.DatabaseService;
+import de.fraunhofer.fokus.ids.services.datasourceAdapter.AdapterClient;
+import de.fraunhofer.fokus.ids.services.datasourceAdapter.AdapterClients;
+import de.fraunhofer.fokus.ids.services.datasourceAdapter.AdapterInstance;
+import de.fraunhofer.fokus.ids.services.datasourceAdapter.AdapterRegistry;
 import io.vertx.config.ConfigRetriever;
 import io.vertx.config.ConfigRetrieverOptions;
 import io.vertx.config.ConfigStoreOptions;
@@ -18,7 +23,6 @@ import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.jdbc.JDBCClient;
 import io.vertx.ext.sql.SQLClient;
-import io.vertx.ext.web.client.WebClient;
 import io.vertx.serviceproxy.ServiceBinder;
 import io.vertx.sqlclient.Tuple;
 
@@ -30,17 +34,22 @@ public class DataSourceController {
 	private Logger LOGGER = LoggerFactory.getLogger(DataSourceController.class.getName());
 	private DataSourceManager dataSourceManager;
 	private DatabaseConnector databaseConnector;
-	private WebClient webClient;
+	private AdapterRegistry adapterRegistry;
+	private AdapterClients adapterClients;
 	private String apikey;
-	private static final String LISTADAPTERS_QUERY = "SELECT name FROM adapters";
 	private static final String FINDBYNAME_QUERY = "SELECT host, port FROM adapters WHERE name= $1";
-	private static final String ADD_QUERY = "INSERT INTO adapters (created_at, updated_at, name, host, port) values(NOW(), NOW(), $1, $2, $3)";
-	private static final String EDIT_QUERY = "UPDATE adapters SET updated_at = NOW(), host = $1, port = $2 WHERE name = $3 ";
+	private static final String ADD_QUERY = "WITH instance AS (INSERT INTO adapter_instances (created_at, updated_at, name, host, port) " +
+			"VALUES (NOW(), NOW(), $1, $2, $3) ON CONFLICT (name, host, port) DO UPDATE SET updated_at = NOW()) " +
+			"INSERT INTO adapters (created_at, updated_at, name, host, port, client_profile) values(NOW(), NOW(), $1, $2, $3, $4)";
+	private static final String EDIT_QUERY = "WITH instance AS (INSERT INTO adapter_instances (created_at, updated_at, name, host, port) " +
+			"VALUES (NOW(), NOW(), $3, $1, $2) ON CONFLICT (name, host, port) DO UPDATE SET updated_at = NOW()) " +
+			"UPDATE adapters SET updated_at = NOW(), host = $1, port = $2, client_profile = $4 WHERE name = $3 ";
 
 	public DataSourceController(Vertx vertx) {
 		this.dataSourceManager = new DataSourceManager();
 		this.databaseConnector = DatabaseConnector.getInstance();
-		this.webClient = WebClient.create(vertx);
+		this.adapterRegistry = AdapterRegistry.getInstance();
+		this.adapterClients = AdapterClients.getInstance(vertx);
 		// ConfigStoreOptions confStore = new ConfigStoreOptions()
         //         .setType("env");
 
@@ -92,11 +101,23 @@ public class DataSourceController {
 
 	}
 
+	/**
+	 * Registers or updates the adapter. Registering a known adapter with another address adds an instance of it.
+	 * The optional "client" object is the client profile of the adapter, see AdapterClient for its settings.
+	 */
 	public void registerAdapter(JsonObject jsonObject, Handler<AsyncResult<JsonObject>> resultHandler) {
+		Object client = jsonObject.getValue("client");
+		if (client != null && !(client instanceof JsonObject && AdapterClient.isValid((JsonObject) client))) {
+			JsonObject jO = new JsonObject();
+			jO.put("status", "error");
+			jO.put("text", "Das Client-Profil des Adapters ist ungültig!");
+			resultHandler.handle(Future.succeededFuture(jO));
+			return;
+		}
 		databaseConnector.query(FINDBYNAME_QUERY, Tuple.tuple().addString(jsonObject.getString("name")), reply -> {
 			if (reply.succeeded()) {
 				if (reply.result().size() > 0) {
-					edit(jsonObject.getString("name"), jsonObject.getJsonObject("address"), reply2 -> {
+					edit(jsonObject.getString("name"), jsonObject.getJsonObject("address"), (JsonObject) client, reply2 -> {
 						if (reply2.succeeded()) {
 							JsonObject jO = new JsonObject();
 							jO.put("status", "success");
@@ -112,9 +133,13 @@ public class DataSourceController {
 				} else {
 					databaseConnector.query(ADD_QUERY, Tuple.tuple().addString(jsonObject.getString("name"))
 									.addString(jsonObject.getJsonObject("address").getString("host"))
-									.addInteger(jsonObject.getJsonObject("address").getInteger("port")),
+									.addInteger(jsonObject.getJsonObject("address").getInteger("port"))
+									.addValue(client == null ? null : client.toString()),
 							reply3 -> {
 								if (reply3.succeeded()) {
+									adapterRegistry.register(jsonObject.getString("name"), jsonObject.getJsonObject("address").getString("host"),
+											jsonObject.getJsonObject("address").getInteger("port"), (JsonObject) client);
+									ArtifactRouteCache.getInstance().invalidate();
 									JsonObject jO = new JsonObject();
 									jO.put("status", "success");
 									jO.put("text", "Adapter wurde registriert");
@@ -132,9 +157,12 @@ public class DataSourceController {
 	}
 	
 	
-	 private void edit(String name, JsonObject jsonObject, Handler<AsyncResult<JsonObject>> resultHandler ){
-         databaseConnector.query(EDIT_QUERY, Tuple.tuple().addString(jsonObject.getString("host")).addLong(jsonObject.getLong("port")).addString(name), reply -> {
+	 private void edit(String name, JsonObject jsonObject, JsonObject client, Handler<AsyncResult<JsonObject>> resultHandler ){
+         databaseConnector.query(EDIT_QUERY, Tuple.tuple().addString(jsonObject.getString("host")).addLong(jsonObject.getLong("port")).addString(name)
+                 .addValue(client == null ? null : client.toString()), reply -> {
              if (reply.succeeded()) {
+                 adapterRegistry.register(name, jsonObject.getString("host"), jsonObject.getInteger("port"), client);
+                 ArtifactRouteCache.getInstance().invalidate();
                  JsonObject jO = new JsonObject();
                  jO.put("status", "success");
                  jO.put("text", "Adapter wurde geändert.");
@@ -150,15 +178,7 @@ public class DataSourceController {
 
 
 	public void listAdapters(Handler<AsyncResult<JsonArray>> resultHandler) {
-		databaseConnector.query(LISTADAPTERS_QUERY, Tuple.tuple(), reply -> {
-			if (reply.failed()) {
-				LOGGER.error(reply.cause());
-				resultHandler.handle(Future.failedFuture(reply.cause()));
-			} else {
-				resultHandler.handle(Future.succeededFuture(new JsonArray(reply.result())));
-			}
-		});
-
+		resultHandler.handle(Future.succeededFuture(adapterRegistry.names()));
 	}
 
 	public void delete(Long id, Handler<AsyncResult<JsonObject>> resultHandler) {
@@ -233,36 +253,25 @@ public class DataSourceController {
 
     public void getFormSchema(String name, Handler<AsyncResult<JsonObject>> resultHandler) {
 
-    	
-    	databaseConnector.query(FINDBYNAME_QUERY, Tuple.tuple().addString(name), reply -> {
+    	adapterRegistry.lookup(name, reply -> {
             if (reply.succeeded()) {
-                try {
-                    
-                    String host = reply.result().get(0).getString("host");
-                    int port = reply.result().get(0).getInteger("port");
-                    webClient
-                    .get(port, host, "/getDataSourceFormSchema/")
-                    .bearerTokenAuthentication(apikey)
-                    .send(adapterReply -> {
-                        if (adapterReply.succeeded()) {
-                            resultHandler.handle(Future.succeededFuture(adapterReply.result().bodyAsJsonObject()));
-                        } else {
-                            LOGGER.error(adapterReply.cause());
-                            resultHandler.handle(Future.failedFuture(adapterReply.cause()));
-                        }
-                    });
-
-    
-                } catch (IndexOutOfBoundsException e) {
-                    LOGGER.info("Queried adapter not registered.");
-                    resultHandler.handle(Future.failedFuture("Queried adapter not registered."));
-                }
+                AdapterClient client = adapterClients.client(name, reply.result());
+                AdapterInstance instance = client.select();
+                client.webClient()
+                .get(instance.port(), instance.host(), "/getDataSourceFormSchema/")
+                .timeout(client.requestTimeout())
+                .bearerTokenAuthentication(apikey)
+                .send(instance.track(adapterReply -> {
+                    if (adapterReply.succeeded()) {
+                        resultHandler.handle(Future.succeededFuture(adapterReply.result().bodyAsJsonObject()));
+                    } else {
+                        LOGGER.error(adapterReply.cause());
+                        resultHandler.handle(Future.failedFuture(adapterReply.cause()));
+                    }
+                }));
             } else {
-                LOGGER.error("Information for " + name + " could not be retrieved.", reply.cause());
                 resultHandler.handle(Future.failedFuture(reply.cause()));
             }
-            
-        
         });
 
     }
@@ -270,36 +279,31 @@ public class DataSourceController {
     	
     	dataSourceManager.findById(id, reply -> {
             if (reply.succeeded()) {
-            	databaseConnector.query(FINDBYNAME_QUERY, Tuple.tuple().addString(reply.result().getString("datasourcetype")), reply2 -> {
+            	String type = reply.result().getString("datasourcetype");
+            	adapterRegistry.lookup(type, reply2 -> {
                     if (reply2.succeeded()) {
-                        try {
-                            String host = reply2.result().get(0).getString("host");
-                            int port = reply2.result().get(0).getInteger("port");
-                            LOGGER.info(host);
-                            webClient
-                            .get(port, host, "/getDataAssetFormSchema/")
-                            .bearerTokenAuthentication(apikey)
-                            .send(adapterReply -> {
-                                if (adapterReply.succeeded()) {
-                                	JsonObject newjO = new JsonObject()
-                                            .put("source", reply.result())
-                                            .put("formSchema", adapterReply.result().bodyAsJsonObject());
-                                	 resultHandler.handle(Future.succeededFuture(newjO));
-                                } else {
-                                    LOGGER.error(adapterReply.cause());
-                                    resultHandler.handle(Future.failedFuture(adapterReply.cause()));
-                                }
-                            });
-                        } catch (IndexOutOfBoundsException e) {
-                            LOGGER.info("Queried adapter not registered.");
-                            resultHandler.handle(Future.failedFuture("Queried adapter not registered."));
-                        }
+                        AdapterClient client = adapterClients.client(type, reply2.result());
+                        AdapterInstance instance = client.select();
+                        LOGGER.info(instance.host());
+                        client.webClient()
+                        .get(instance.port(), instance.host(), "/getDataAssetFormSchema/")
+                        .timeout(client.requestTimeout())
+                        .bearerTokenAuthentication(apikey)
+                        .send(instance.track(adapterReply -> {
+                            if (adapterReply.succeeded()) {
+                            	JsonObject newjO = new JsonObject()
+                                        .put("source", reply.result())
+                                        .put("formSchema", adapterReply.result().bodyAsJsonObject());
+                            	 resultHandler.handle(Future.succeededFuture(newjO));
+                            } else {
+                                LOGGER.error(adapterReply.cause());
+                                resultHandler.handle(Future.failedFuture(adapterReply.cause()));
+                            }
+                        }));
                     } else {
-                        LOGGER.error("Information for " + reply.result().getString("datasourcetype") + " could not be retrieved.", reply2.cause());
                         resultHandler.handle(Future.failedFuture(reply2.cause()));
                     }
-                
-            	}); 
+            	});
             }
             else {
                 LOGGER.error("DataSource not found.", reply.cause());
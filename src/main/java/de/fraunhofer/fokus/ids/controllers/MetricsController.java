@@ -0,0 +1,38 @@
+package de.fraunhofer.fokus.ids.controllers;
+
+import de.fraunhofer.fokus.ids.persistence.util.DatabaseConnector;
+import de.fraunhofer.fokus.ids.services.ArtifactRouteCache;
+import de.fraunhofer.fokus.ids.services.authAdapter.DatTokenCache;
+import de.fraunhofer.fokus.ids.services.authAdapter.TokenValidationCache;
+import de.fraunhofer.fokus.ids.services.datasourceAdapter.AdapterClients;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Collects the runtime metrics of the connector's caches and clients.
+ */
+public class MetricsController {
+
+	private DatTokenCache datTokenCache;
+	private TokenValidationCache tokenValidationCache;
+	private AdapterClients adapterClients;
+
+	public MetricsController(Vertx vertx){
+		this.datTokenCache = DatTokenCache.getInstance(vertx);
+		this.tokenValidationCache = TokenValidationCache.getInstance(vertx);
+		this.adapterClients = AdapterClients.getInstance(vertx);
+	}
+
+	public void getMetrics(Handler<AsyncResult<JsonObject>> resultHandler) {
+		JsonObject metrics = new JsonObject()
+				.put("dat", datTokenCache.getMetrics())
+				.put("tokenValidation", tokenValidationCache.getMetrics())
+				.put("database", DatabaseConnector.getInstance().getMetrics())
+				.put("artifactRoutes", ArtifactRouteCache.getInstance().getMetrics())
+				.put("adapters", adapterClients.getMetrics());
+		resultHandler.handle(Future.succeededFuture(metrics));
+	}
+}
@@ -13,6 +13,14 @@ public class ApplicationConfig {
     public static final String ENV_REPOSITORY = "REPOSITORY";
     public static final String DEFAULT_REPOSITORY = "/ids/repo/db";
     
+    public static final String UPLOAD_DIRECTORY = "uploads";
+
+    public static final String ENV_UPLOAD_LIMIT = "UPLOAD_LIMIT";
+    public static final Long DEFAULT_UPLOAD_LIMIT = 1024L * 1024L * 1024L;
+
+    public static final String ENV_ARTIFACT_PASSTHROUGH = "ARTIFACT_PASSTHROUGH";
+    public static final Boolean DEFAULT_ARTIFACT_PASSTHROUGH = true;
+    
     public static final String ENV_FRONTEND_CONFIG = "FRONTEND_CONFIG";
     public static final JsonObject DEFAULT_FRONTEND_CONFIG = new JsonObject("{\"username\":\"admin\",\"password\":\"admin\"}");
     
@@ -28,6 +36,9 @@ public class ApplicationConfig {
     public static final String ENV_SERVICE_PORT = "SERVICE_PORT";
     public static final Integer DEFAULT_SERVICE_PORT = 8080;
     
+    public static final String ENV_HTTP_INSTANCES = "HTTP_INSTANCES";
+    public static final Integer DEFAULT_HTTP_INSTANCES = Runtime.getRuntime().availableProcessors();
+
     public static final String ENV_ANNIF = "ANNIF";
     public static final String DEFAULT_ANNIF = "https://api.annif.org/v1/projects/yso-mllm-en/suggest";
     //https://api.annif.org/v1/projects/yso-mllm-en/suggest
@@ -0,0 +1,457 @@
+package de.fraunhofer.fokus.ids.main;
+
+import de.fraunhofer.fokus.ids.controllers.*;
+import de.fraunhofer.fokus.ids.enums.AcceptType;
+import de.fraunhofer.fokus.ids.models.DataAssetDescription;
+import de.fraunhofer.fokus.ids.models.DataAssetFilter;
+import de.fraunhofer.fokus.ids.models.SpooledFile;
+import de.fraunhofer.fokus.ids.persistence.entities.DataSource;
+import de.fraunhofer.fokus.ids.persistence.enums.DataAssetStatus;
+import de.fraunhofer.fokus.ids.persistence.managers.AuthManager;
+import de.fraunhofer.fokus.ids.persistence.managers.BrokerManager;
+import de.fraunhofer.fokus.ids.services.ConfigService;
+import de.fraunhofer.fokus.ids.utils.IDSMessageParser;
+import de.fraunhofer.iais.eis.ArtifactRequestMessage;
+import de.fraunhofer.iais.eis.DescriptionRequestMessage;
+import io.vertx.core.*;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.FileUpload;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.api.contract.openapi3.OpenAPI3RouterFactory;
+import io.vertx.ext.web.handler.BodyHandler;
+import io.vertx.ext.web.handler.CorsHandler;
+import io.vertx.ext.web.handler.JWTAuthHandler;
+import io.vertx.ext.web.handler.StaticHandler;
+import org.apache.http.entity.ContentType;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Serves the public IDS endpoints and the UI API. MainVerticle deploys this verticle once per configured
+ * HTTP instance, so every instance owns its router, controllers and managers and runs on its own event loop.
+ * All instances listen on the same port and Vert.x balances incoming connections between them.
+ */
+public class HttpServerVerticle extends AbstractVerticle {
+    private static final List<String> DATA_ASSET_QUERY_PARAMS = Arrays.asList("status", "sourceid", "tag", "q", "after", "limit");
+    private static final String KEEP_UPLOADS = "keepUploads";
+
+    private Logger LOGGER = LoggerFactory.getLogger(HttpServerVerticle.class.getName());
+    private AuthManager authManager;
+    private ConnectorController connectorController;
+    private DataAssetController dataAssetController;
+    private DataSourceController dataSourceController;
+    private JobController jobController;
+    private BrokerController brokerController;
+    private MetricsController metricsController;
+    private BrokerManager brokerManager;
+    private ConfigService configService;
+    private int servicePort;
+    private String uploadDirectory;
+    private long uploadLimit;
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        this.authManager = new AuthManager(vertx);
+        this.connectorController = new ConnectorController(vertx,
+                config().getBoolean(ApplicationConfig.ENV_ARTIFACT_PASSTHROUGH, ApplicationConfig.DEFAULT_ARTIFACT_PASSTHROUGH));
+        this.dataSourceController = new DataSourceController(vertx);
+        this.jobController = new JobController(vertx);
+        this.brokerController = new BrokerController(vertx);
+        this.metricsController = new MetricsController(vertx);
+        this.brokerManager = new BrokerManager();
+        this.configService = new ConfigService(vertx);
+        this.servicePort = config().getInteger(ApplicationConfig.ENV_SERVICE_PORT, ApplicationConfig.DEFAULT_SERVICE_PORT);
+        this.uploadDirectory = Paths.get(config().getString(ApplicationConfig.ENV_REPOSITORY, ApplicationConfig.DEFAULT_REPOSITORY),
+                ApplicationConfig.UPLOAD_DIRECTORY).toString();
+        this.dataAssetController = new DataAssetController(vertx, uploadDirectory);
+        this.uploadLimit = config().getLong(ApplicationConfig.ENV_UPLOAD_LIMIT, ApplicationConfig.DEFAULT_UPLOAD_LIMIT);
+
+        createHttpServer(startPromise);
+    }
+
+    private void createHttpServer(Promise<Void> startPromise) {
+
+        OpenAPI3RouterFactory.create(vertx, "/webroot/swagger.yaml", ar -> {
+            if (ar.succeeded()) {
+                OpenAPI3RouterFactory routerFactory = ar.result();
+
+                Set<String> allowedHeaders = new HashSet<>();
+                allowedHeaders.add("x-requested-with");
+                allowedHeaders.add("Access-Control-Allow-Origin");
+                allowedHeaders.add("origin");
+                allowedHeaders.add("Content-Type");
+                allowedHeaders.add("accept");
+                allowedHeaders.add("Authorization");
+
+                Set<HttpMethod> allowedMethods = new HashSet<>();
+                allowedMethods.add(HttpMethod.GET);
+                allowedMethods.add(HttpMethod.POST);
+                allowedMethods.add(HttpMethod.DELETE);
+
+                // The BodyHandler is shared by all operations, so uploads are deleted by deleteUploadsOnEnd instead,
+                // which lets the data asset upload keep its files.
+                routerFactory.setBodyHandler(BodyHandler.create(uploadDirectory)
+                        .setBodyLimit(uploadLimit)
+                        .setDeleteUploadedFilesOnEnd(false));
+
+                routerFactory.addGlobalHandler(this::deleteUploadsOnEnd);
+                routerFactory.addGlobalHandler(CorsHandler.create(".*.").allowedHeaders(allowedHeaders).allowedMethods(allowedMethods).allowCredentials(true));
+                routerFactory.addGlobalHandler(this::checkReady);
+
+                routerFactory.addSecurityHandler("bearerAuth", JWTAuthHandler.create(authManager.getProvider()));
+
+                routerFactory
+                        .addHandlerByOperationId("loginId", routingContext ->
+                                authManager.login(routingContext.getBodyAsJson(), reply -> {
+                                    if (reply.succeeded()) {
+                                        if (reply.result() != null) {
+                                            routingContext.response().end(reply.result());
+                                        } else {
+                                            routingContext.fail(401);
+                                        }
+                                    } else {
+                                        routingContext.response().setStatusCode(500).end();
+                                    }
+                                })
+                        )
+                        .addHandlerByOperationId("aboutPostId", routingContext ->
+                                connectorController.checkMessage(IDSMessageParser.parse(
+                                        routingContext.request().formAttributes()), DescriptionRequestMessage.class, routingContext.response()))
+                        .addHandlerByOperationId("aboutGetId", routingContext ->
+                                connectorController.about(intParam(routingContext, "page"), intParam(routingContext, "size"),
+                                        routingContext.response()))
+                        .addHandlerByOperationId("dataPostId", routingContext ->
+                                connectorController.checkMessage(IDSMessageParser.parse(
+                                        routingContext.request().formAttributes()), ArtifactRequestMessage.class, routingContext.response()))
+                        .addHandlerByOperationId("dataGetId", routingContext ->
+                                connectorController.payload(true, Long.parseLong(routingContext.request().getParam("id")), "", null
+                                        , routingContext.response()))
+                        .addHandlerByOperationId("infrastructureId", routingContext ->
+                                connectorController.routeMessage(IDSMessageParser.parse(
+                                        routingContext.request().formAttributes()), routingContext.response()))
+                        // Jobs
+
+                        .addHandlerByOperationId("jobGetId", routingContext ->
+                                jobController.findAll(result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("jobDeleteId", routingContext ->
+                                jobController.deleteAll(result -> reply(result, routingContext.response())))
+
+                        // Metrics
+
+                        .addHandlerByOperationId("metricsId", routingContext ->
+                                metricsController.getMetrics(result -> reply(result, routingContext.response())))
+
+                        // Data Assets
+                        
+                        .addHandlerByOperationId("getDataAssetId", routingContext ->
+                        dataAssetController.getById(Long.parseLong(routingContext.request().getParam("id")),result -> reply(result, routingContext.response())))
+                        //#apiToDownloadTheLink
+                        .addHandlerByOperationId("getResource", routingContext ->
+                            connectorController.resource(Long.parseLong(routingContext.request().getParam("distributionId")),
+                                     routingContext.request().getParam("dataSourceType"), routingContext.response()))
+
+                        .addHandlerByOperationId("tagsDataAssetId", routingContext ->
+                        dataAssetController.generateTags(Long.parseLong(routingContext.request().getParam("id")), result -> reply(result, routingContext.response())))
+                        
+
+                        .addHandlerByOperationId("getCountsId", routingContext ->
+                                dataAssetController.counts(result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("publishAllDataAssetsId", routingContext ->
+                                dataAssetController.publishAll(result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("unpublishAllDataAssetsId", routingContext ->
+                                dataAssetController.unpublishAll(result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("publishDataAssetsId", routingContext ->
+                                processBulkStatusChange(routingContext, true))
+                        .addHandlerByOperationId("unpublishDataAssetsId", routingContext ->
+                                processBulkStatusChange(routingContext, false))
+                        .addHandlerByOperationId("publishDataAssetId", routingContext ->
+                                dataAssetController.publish(Long.parseLong(routingContext.request().getParam("id")), result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("unpublishDataAssetId", routingContext ->
+                                dataAssetController.unPublish(Long.parseLong(routingContext.request().getParam("id")), result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("deleteDataAssetId", routingContext ->
+                                dataAssetController.delete(Long.parseLong(routingContext.request().getParam("id")), result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("getDataAssetsId", this::processDataAssetQuery)
+                        .addHandlerByOperationId("addDataAssetId", this::processDataAssetInformation)
+
+                        
+                        // Data Sources
+
+                        .addHandlerByOperationId("dataSourceAddId", routingContext ->
+                                dataSourceController.add(toDataSource(routingContext.getBodyAsJson()), result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("dataSourceDeleteId", routingContext ->
+                                dataSourceController.delete(Long.parseLong(routingContext.request().getParam("id")), result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("allDataSourceGetId", routingContext ->
+                                dataSourceController.findAllByType(result -> reply(result, routingContext.response())))
+                        
+                        .addHandlerByOperationId("datasourceGetId", routingContext ->
+                                dataSourceController.findById(Long.parseLong(routingContext.request().getParam("id")), result -> reply(result, routingContext.response())))
+                           
+                        .addHandlerByOperationId("dataSourceTypeGetId", routingContext ->
+                                dataSourceController.findByType(routingContext.request().getParam("type"), result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("dataSourceEditId", routingContext ->
+                                dataSourceController.update(toDataSource(routingContext.getBodyAsJson()), Long.parseLong(routingContext.request().getParam("id")), result -> reply(result, routingContext.response())))
+                        
+                        .addHandlerByOperationId("dataSourceSchemaGetId", routingContext ->
+                                dataSourceController.getFormSchema(routingContext.request().getParam("type"), result -> reply(result, routingContext.response())))
+                         		
+                        // Broker
+
+                        .addHandlerByOperationId("brokerAddId", routingContext ->
+                                brokerController.add(routingContext.getBodyAsJson().getString("url"), result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("brokerUnregisterId", routingContext ->
+                                brokerController.unregister(Long.parseLong(routingContext.request().getParam("id")), result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("brokerRegisterId", routingContext ->
+                                brokerController.register(Long.parseLong(routingContext.request().getParam("id")), result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("brokerGetId", routingContext ->
+                                brokerManager.findAll(result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("brokerDeleteId", routingContext ->
+                                brokerController.delete(Long.parseLong(routingContext.request().getParam("id")), result -> reply(result, routingContext.response())))
+
+                        // Config
+
+                        .addHandlerByOperationId("configGetId", routingContext ->
+                                configService.getConfiguration(result -> reply(result, routingContext.response())))
+                        .addHandlerByOperationId("configEditId", routingContext ->
+                                configService.editConfiguration(routingContext.getBodyAsJson(), result -> reply(result, routingContext.response())))
+
+                        // Adapters
+                        
+                        .addHandlerByOperationId("registerId", routingContext -> 
+                        		dataSourceController.registerAdapter(routingContext.getBodyAsJson(), reply -> reply(reply, routingContext.response())))
+                        .addHandlerByOperationId("adapterGetId", routingContext ->
+                                dataSourceController.listAdapters(result -> reply(result, routingContext.response())))
+                        
+                    
+                   
+                ;
+
+                Router router = routerFactory.getRouter();
+                router.route("/").handler(routingContext -> {
+                    connectorController.about(intParam(routingContext, "page"), intParam(routingContext, "size"),
+                            routingContext.response());
+                });
+                router.route("/api*").handler(StaticHandler.create());
+
+                HttpServer server = vertx.createHttpServer();
+                server.requestHandler(router).listen(this.servicePort, listenReply -> {
+                    if (listenReply.succeeded()) {
+                        LOGGER.info("public-data-space-connector deployed on port " + servicePort);
+                        startPromise.complete();
+                    } else {
+                        LOGGER.error(listenReply.cause());
+                        startPromise.fail(listenReply.cause());
+                    }
+                });
+
+            } else {
+                LOGGER.error(ar.cause());
+                startPromise.fail(ar.cause());
+            }
+        });
+    }
+    
+  
+    
+
+    /**
+     * Deletes the uploads of every request once its response is sent, unless a handler took them over with keepUploads.
+     */
+    private void deleteUploadsOnEnd(RoutingContext routingContext) {
+        if (!routingContext.fileUploads().isEmpty()) {
+            routingContext.addBodyEndHandler(v -> {
+                if (!Boolean.TRUE.equals(routingContext.get(KEEP_UPLOADS))) {
+                    deleteUploads(routingContext);
+                }
+            });
+        }
+        routingContext.next();
+    }
+
+    private void keepUploads(RoutingContext routingContext) {
+        routingContext.put(KEEP_UPLOADS, true);
+    }
+
+    private void checkReady(RoutingContext routingContext) {
+        if (StartupState.isReady()) {
+            routingContext.next();
+        } else {
+            routingContext.response().setStatusCode(503).putHeader("Retry-After", "1").end();
+        }
+    }
+
+    private void processDataAssetInformation(RoutingContext routingContext) {
+        if (routingContext.parsedHeaders().contentType().value().contains(AcceptType.JSON.getHeader())) {
+            JsonObject jsonObject = routingContext.getBodyAsJson();
+            String licenseurl = jsonObject.getString("licenseurl");
+            String licensetitle = jsonObject.getString("licensetitle");
+            jsonObject.remove("licenseurl");
+            jsonObject.remove("licensetitle");
+            DataAssetDescription dataAssetDescription = Json.decodeValue(jsonObject.toString(), DataAssetDescription.class);
+            // Files can only be uploaded as multipart, references given in the JSON body would point anywhere on disk.
+            dataAssetDescription.setFiles(null);
+            dataAssetController.add(dataAssetDescription, licenseurl, licensetitle, result -> reply(result, routingContext.response()));
+
+        } else {
+
+
+            if(routingContext.request().getFormAttribute("data")== null){
+                routingContext.response().setStatusCode(400).setStatusMessage("No Data in body").end();
+                return;
+            }
+
+
+            JsonObject jsonObject;
+            try {
+                jsonObject = new JsonObject(routingContext.request().getFormAttribute("data"));
+            } catch (DecodeException e) {
+                LOGGER.error(e);
+                routingContext.response().setStatusCode(400).setStatusMessage("Invalid Data in body").end();
+                return;
+            }
+            String licenseurl = jsonObject.getString("licenseurl", "");
+            String licensetitle = jsonObject.getString("licensetitle", "");
+            jsonObject.remove("licenseurl");
+            jsonObject.remove("licensetitle");
+
+            // The BodyHandler already spooled the uploads to disk, only the references are passed on.
+            // The files are deleted once the data asset creation job is done with them.
+            Set<SpooledFile> files = new HashSet<>();
+            for (FileUpload fileUpload : routingContext.fileUploads()) {
+                SpooledFile f = new SpooledFile();
+                f.setPath(fileUpload.uploadedFileName());
+                try {
+                    f.setName(URLDecoder.decode(fileUpload.fileName(), "UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    LOGGER.error(e);
+                    f.setName(fileUpload.fileName());
+                }
+                f.setCharSet(fileUpload.charSet());
+                f.setContentTransferEncoding(fileUpload.contentTransferEncoding());
+                f.setSize(fileUpload.size());
+                f.setContentType(fileUpload.contentType());
+                files.add(f);
+            }
+
+            DataAssetDescription dataAssetDescription = Json.decodeValue(jsonObject.toString(), DataAssetDescription.class);
+            dataAssetDescription.setFiles(files);
+            keepUploads(routingContext);
+
+            dataAssetController.add(dataAssetDescription,licenseurl, licensetitle,  result -> reply(result, routingContext.response()));
+
+        }
+    }
+
+    private void deleteUploads(RoutingContext routingContext) {
+        for (FileUpload fileUpload : routingContext.fileUploads()) {
+            vertx.fileSystem().delete(fileUpload.uploadedFileName(), ar -> {
+                if (ar.failed()) {
+                    LOGGER.error("Upload " + fileUpload.uploadedFileName() + " could not be deleted.", ar.cause());
+                }
+            });
+        }
+    }
+
+    //TODO: WORKAROUND. Find way to use Json.deserialize()
+    private DataSource toDataSource(JsonObject bodyAsJson) {
+        DataSource ds = new DataSource();
+        ds.setData(bodyAsJson.getJsonObject("data"));
+        ds.setDatasourceName(bodyAsJson.getString("datasourcename"));
+        ds.setDatasourceType(bodyAsJson.getString("datasourcetype"));
+        return ds;
+    }
+
+    /**
+     * Expects a body of the form {"ids": [1, 2, ...]}.
+     */
+    private void processBulkStatusChange(RoutingContext routingContext, boolean publish) {
+        List<Long> ids = new ArrayList<>();
+        try {
+            JsonArray idArray = routingContext.getBodyAsJson().getJsonArray("ids");
+            for (int i = 0; i < idArray.size(); i++) {
+                ids.add(idArray.getLong(i));
+            }
+        } catch (RuntimeException e) {
+            routingContext.response().setStatusCode(400).setStatusMessage("No ids in body").end();
+            return;
+        }
+        if (publish) {
+            dataAssetController.publishBulk(ids, result -> reply(result, routingContext.response()));
+        } else {
+            dataAssetController.unpublishBulk(ids, result -> reply(result, routingContext.response()));
+        }
+    }
+
+    /**
+     * Without paging or filter parameters all data assets are returned as an array, as before.
+     */
+    private void processDataAssetQuery(RoutingContext routingContext) {
+        MultiMap params = routingContext.request().params();
+        if (Collections.disjoint(params.names(), DATA_ASSET_QUERY_PARAMS)) {
+            dataAssetController.index(result -> reply(result, routingContext.response()));
+            return;
+        }
+        DataAssetFilter filter = new DataAssetFilter();
+        try {
+            if (params.get("status") != null) {
+                filter.setStatus(DataAssetStatus.valueOf(params.get("status").toUpperCase()));
+            }
+            if (params.get("sourceid") != null) {
+                filter.setSourceId(Long.parseLong(params.get("sourceid")));
+            }
+            if (params.get("after") != null) {
+                filter.setAfter(Long.parseLong(params.get("after")));
+            }
+            if (params.get("limit") != null) {
+                filter.setLimit(Integer.parseInt(params.get("limit")));
+            }
+        } catch (IllegalArgumentException e) {
+            routingContext.response().setStatusCode(400).end();
+            return;
+        }
+        filter.setTag(params.get("tag"));
+        filter.setText(params.get("q"));
+        dataAssetController.page(filter, result -> reply(result, routingContext.response()));
+    }
+
+    private void reply(Object result, HttpServerResponse response) {
+        if (result != null) {
+            String entity = result.toString();
+            response.putHeader("content-type", ContentType.APPLICATION_JSON.toString());
+            response.end(entity);
+        } else {
+            LOGGER.error("Result is null.");
+            response.setStatusCode(500).end();
+        }
+    }
+
+    
+    private Integer intParam(RoutingContext routingContext, String name) {
+        String value = routingContext.request().getParam(name);
+        try {
+            return value == null ? null : Math.max(Integer.parseInt(value), 0);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void reply(AsyncResult result, HttpServerResponse response) {
+        if (result.succeeded()) {
+            reply(result.result(), response);
+        } else {
+            LOGGER.error("Result Future failed.", result.cause());
+            response.setStatusCode(500).end();
+        }
+    }
+}
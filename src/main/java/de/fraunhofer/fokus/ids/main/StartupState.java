@@ -0,0 +1,21 @@
+package de.fraunhofer.fokus.ids.main;
+
+/**
+ * JVM wide readiness of the connector. The HTTP server is started while the database is still being initialized
+ * and answers with 503 until MainVerticle marks the connector as ready.
+ */
+public class StartupState {
+
+    private static volatile boolean ready;
+
+    private StartupState() {
+    }
+
+    public static boolean isReady() {
+        return ready;
+    }
+
+    public static void markReady() {
+        ready = true;
+    }
+}
@@ -0,0 +1,41 @@
+package de.fraunhofer.fokus.ids.models;
+
+import de.fraunhofer.fokus.ids.persistence.entities.DataSource;
+import de.fraunhofer.fokus.ids.persistence.entities.Distribution;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Everything needed to serve an artifact: the distribution, the data source of its dataset and the endpoint
+ * ({"host", "port" and the optional client profile "client"}) of the adapter responsible for the data source type,
+ * or null if no adapter is registered.
+ */
+public class ArtifactRoute {
+
+    private Distribution distribution;
+    private DataSource dataSource;
+    private JsonObject adapter;
+
+    public Distribution getDistribution() {
+        return distribution;
+    }
+
+    public void setDistribution(Distribution distribution) {
+        this.distribution = distribution;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public JsonObject getAdapter() {
+        return adapter;
+    }
+
+    public void setAdapter(JsonObject adapter) {
+        this.adapter = adapter;
+    }
+}
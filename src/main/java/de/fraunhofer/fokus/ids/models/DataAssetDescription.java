@@ -1,8 +1,5 @@
 package de.fraunhofer.fokus.ids.models;
 
-import de.fraunhofer.fokus.ids.messages.File;
-import io.vertx.ext.web.FileUpload;
-
 import java.util.Map;
 import java.util.Set;
 
@@ -14,13 +11,13 @@ public class DataAssetDescription {
     private int sourceId;
     private Map data;
     private String datasourcetype;
-    private Set<File> files;
+    private Set<SpooledFile> files;
 
-    public Set<File> getFiles() {
+    public Set<SpooledFile> getFiles() {
         return files;
     }
 
-    public void setFiles(Set<File> files) {
+    public void setFiles(Set<SpooledFile> files) {
         this.files = files;
     }
 
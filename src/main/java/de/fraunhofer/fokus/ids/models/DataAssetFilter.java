@@ -0,0 +1,68 @@
+package de.fraunhofer.fokus.ids.models;
+
+import de.fraunhofer.fokus.ids.persistence.enums.DataAssetStatus;
+
+/**
+ * Filter and keyset cursor of a data asset page. Data assets are ordered by descending id,
+ * after is the id of the last data asset of the previous page.
+ */
+public class DataAssetFilter {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    private DataAssetStatus status;
+    private Long sourceId;
+    private String tag;
+    private String text;
+    private Long after;
+    private int limit = DEFAULT_LIMIT;
+
+    public DataAssetStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(DataAssetStatus status) {
+        this.status = status;
+    }
+
+    public Long getSourceId() {
+        return sourceId;
+    }
+
+    public void setSourceId(Long sourceId) {
+        this.sourceId = sourceId;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public Long getAfter() {
+        return after;
+    }
+
+    public void setAfter(Long after) {
+        this.after = after;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = Math.min(Math.max(limit, 1), MAX_LIMIT);
+    }
+}
@@ -0,0 +1,149 @@
+package de.fraunhofer.fokus.ids.models;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.core.streams.WriteStream;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A multipart/form-data message whose parts are either in-memory buffers or read streams.
+ * Stream parts are piped to the target with backpressure, so a payload file is never held in memory.
+ */
+public class MultipartMessage {
+
+    private static final String CRLF = "\r\n";
+
+    private final String boundary = "----" + UUID.randomUUID().toString().replace("-", "");
+    private final List<Part> parts = new ArrayList<>();
+    private final List<Handler<Boolean>> cleanupHandlers = new ArrayList<>();
+    private boolean cleanedUp;
+
+    public MultipartMessage addPart(String name, String content, String contentType) {
+        parts.add(new Part(name, null, contentType, Buffer.buffer(content, "UTF-8"), null));
+        return this;
+    }
+
+    public MultipartMessage addPart(String name, String fileName, ReadStream<Buffer> content, String contentType) {
+        parts.add(new Part(name, fileName, contentType, null, content));
+        return this;
+    }
+
+    /**
+     * Registers a handler that is called once after the message has been written or discarded,
+     * e.g. to close and delete the file backing a stream part. It receives whether the message was written completely.
+     */
+    public MultipartMessage cleanupHandler(Handler<Boolean> handler) {
+        cleanupHandlers.add(handler);
+        return this;
+    }
+
+    public String contentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    public boolean isBuffered() {
+        for (Part part : parts) {
+            if (part.stream != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Only available if all parts are buffers, streams can be consumed once and have to be written with writeTo.
+     */
+    public Buffer toBuffer() {
+        if (!isBuffered()) {
+            throw new IllegalStateException("Multipart message contains stream parts.");
+        }
+        Buffer buffer = Buffer.buffer();
+        for (Part part : parts) {
+            buffer.appendBuffer(part.head()).appendBuffer(part.buffer).appendString(CRLF);
+        }
+        return buffer.appendString("--" + boundary + "--" + CRLF);
+    }
+
+    /**
+     * Writes all parts to the given stream without ending it. The cleanup handlers are called afterwards,
+     * regardless of the outcome.
+     */
+    public void writeTo(WriteStream<Buffer> writeStream, Handler<AsyncResult<Void>> resultHandler) {
+        writeParts(parts.iterator(), writeStream, ar -> {
+            cleanup(ar.succeeded());
+            resultHandler.handle(ar);
+        });
+    }
+
+    public void cleanup() {
+        cleanup(false);
+    }
+
+    private void cleanup(boolean written) {
+        if (!cleanedUp) {
+            cleanedUp = true;
+            for (Handler<Boolean> handler : cleanupHandlers) {
+                handler.handle(written);
+            }
+        }
+    }
+
+    private void writeParts(Iterator<Part> iterator, WriteStream<Buffer> writeStream, Handler<AsyncResult<Void>> resultHandler) {
+        if (!iterator.hasNext()) {
+            writeStream.write(Buffer.buffer("--" + boundary + "--" + CRLF), resultHandler);
+            return;
+        }
+        Part part = iterator.next();
+        writeStream.write(part.head());
+        if (part.stream == null) {
+            writeStream.write(part.buffer);
+            writeStream.write(Buffer.buffer(CRLF));
+            writeParts(iterator, writeStream, resultHandler);
+        } else {
+            part.stream.pipe()
+                    .endOnSuccess(false)
+                    .endOnFailure(false)
+                    .to(writeStream, pipeReply -> {
+                        if (pipeReply.succeeded()) {
+                            writeStream.write(Buffer.buffer(CRLF));
+                            writeParts(iterator, writeStream, resultHandler);
+                        } else {
+                            resultHandler.handle(Future.failedFuture(pipeReply.cause()));
+                        }
+                    });
+        }
+    }
+
+    private class Part {
+        private final String name;
+        private final String fileName;
+        private final String contentType;
+        private final Buffer buffer;
+        private final ReadStream<Buffer> stream;
+
+        private Part(String name, String fileName, String contentType, Buffer buffer, ReadStream<Buffer> stream) {
+            this.name = name;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.buffer = buffer;
+            this.stream = stream;
+        }
+
+        private Buffer head() {
+            StringBuilder head = new StringBuilder("--").append(boundary).append(CRLF)
+                    .append("Content-Disposition: form-data; name=\"").append(name).append("\"");
+            if (fileName != null) {
+                head.append("; filename=\"").append(fileName.replace("\"", "\\\"")).append("\"");
+            }
+            head.append(CRLF).append("Content-Type: ").append(contentType).append(CRLF).append(CRLF);
+            return Buffer.buffer(head.toString(), "UTF-8");
+        }
+    }
+}
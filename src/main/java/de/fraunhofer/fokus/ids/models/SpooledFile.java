@@ -0,0 +1,82 @@
+package de.fraunhofer.fokus.ids.models;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * An uploaded file that stays on disk in the upload directory and is only referenced by its path.
+ */
+public class SpooledFile {
+
+    private String name;
+    private String path;
+    private long size;
+    private String contentType;
+    private String charSet;
+    private String contentTransferEncoding;
+
+    /**
+     * True if the path lies inside the upload directory. Spooled files outside of it are never read or deleted.
+     */
+    public static boolean isInUploadDirectory(String path, String uploadDirectory) {
+        if (path == null) {
+            return false;
+        }
+        try {
+            Path uploads = Paths.get(uploadDirectory).toAbsolutePath().normalize();
+            return Paths.get(path).toAbsolutePath().normalize().startsWith(uploads);
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getCharSet() {
+        return charSet;
+    }
+
+    public void setCharSet(String charSet) {
+        this.charSet = charSet;
+    }
+
+    public String getContentTransferEncoding() {
+        return contentTransferEncoding;
+    }
+
+    public void setContentTransferEncoding(String contentTransferEncoding) {
+        this.contentTransferEncoding = contentTransferEncoding;
+    }
+
+}
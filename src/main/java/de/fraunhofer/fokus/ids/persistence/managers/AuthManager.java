@@ -41,7 +41,7 @@ public class AuthManager {
 
     public void login(JsonObject credentials, Handler<AsyncResult<String>> resultHandler) {
 
-        databaseConnector.query(USER_QUERY, Tuple.tuple().addString(credentials.getString("username")),reply -> {
+        databaseConnector.readQuery(USER_QUERY, Tuple.tuple().addString(credentials.getString("username")),reply -> {
             if (reply.failed()) {
                 LOGGER.error(reply.cause());
                 resultHandler.handle(Future.failedFuture(reply.cause().toString()));
@@ -105,7 +105,7 @@ public class BrokerManager {
     }
 
     public void findAll(Handler<AsyncResult<JsonArray>> resultHandler){
-        databaseConnector.query(FINDALL_QUERY, Tuple.tuple(), reply -> {
+        databaseConnector.readQuery(FINDALL_QUERY, Tuple.tuple(), reply -> {
             if (reply.failed()) {
                 LOGGER.error(reply.cause());
                 resultHandler.handle(Future.failedFuture(reply.cause()));
@@ -116,7 +116,7 @@ public class BrokerManager {
     }
 
     public void findAllRegistered(Handler<AsyncResult<JsonArray>> resultHandler){
-        databaseConnector.query(FINDBYSTATUS_QUERY, Tuple.tuple().addString(BrokerStatus.REGISTERED.toString()), reply -> {
+        databaseConnector.readQuery(FINDBYSTATUS_QUERY, Tuple.tuple().addString(BrokerStatus.REGISTERED.toString()), reply -> {
             if (reply.failed()) {
                 LOGGER.error(reply.cause());
                 resultHandler.handle(Future.failedFuture(reply.cause()));
@@ -127,7 +127,7 @@ public class BrokerManager {
     }
 
     public void findById(long id, Handler<AsyncResult<JsonObject>> resultHandler){
-        databaseConnector.query(FINDBYID_QUERY,Tuple.tuple().addLong(id), reply -> {
+        databaseConnector.readQuery(FINDBYID_QUERY,Tuple.tuple().addLong(id), reply -> {
             if (reply.failed()) {
                 LOGGER.error(reply.cause());
                 resultHandler.handle(Future.failedFuture(reply.cause()));
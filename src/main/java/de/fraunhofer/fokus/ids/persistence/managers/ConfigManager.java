@@ -21,7 +21,7 @@ public class ConfigManager {
     }
 
     public void get(Handler<AsyncResult<JsonObject>> resultHandler){
-        databaseConnector.query("SELECT * FROM configuration", Tuple.tuple(),reply -> {
+        databaseConnector.readQuery("SELECT * FROM configuration", Tuple.tuple(),reply -> {
             if(reply.succeeded()){
                 if(reply.result().size()>0) {
                     resultHandler.handle(Future.succeededFuture(reply.result().get(0)));
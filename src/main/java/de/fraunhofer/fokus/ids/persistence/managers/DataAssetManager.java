@@ -2,11 +2,16 @@ package de.fraunhofer.fokus.ids.persistence.managers;
 
 import de.fraunhofer.fokus.ids.main.ApplicationConfig;
 import de.fraunhofer.fokus.ids.models.Constants;
+import de.fraunhofer.fokus.ids.models.ArtifactRoute;
+import de.fraunhofer.fokus.ids.models.DataAssetFilter;
 import de.fraunhofer.fokus.ids.persistence.entities.Dataset;
 import de.fraunhofer.fokus.ids.persistence.entities.Distribution;
 import de.fraunhofer.fokus.ids.persistence.entities.Resource;
 import de.fraunhofer.fokus.ids.persistence.enums.DataAssetStatus;
 import de.fraunhofer.fokus.ids.persistence.util.DatabaseConnector;
+import de.fraunhofer.fokus.ids.persistence.util.EntityMapper;
+import de.fraunhofer.fokus.ids.services.ArtifactRouteCache;
+import de.fraunhofer.fokus.ids.services.SelfDescriptionCache;
 import de.fraunhofer.fokus.ids.services.datasourceAdapter.DataSourceAdapterService;
 import io.netty.channel.unix.Buffer;
 import io.vertx.config.ConfigRetriever;
@@ -20,10 +25,13 @@ import io.vertx.ext.web.client.HttpResponse;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.multipart.MultipartForm;
 import io.vertx.serviceproxy.ServiceBinder;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.SqlClient;
 import io.vertx.sqlclient.Tuple;
 
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.jsoup.Jsoup;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -38,6 +46,8 @@ public class DataAssetManager {
 
 	private Logger LOGGER = LoggerFactory.getLogger(DataAssetManager.class.getName());
 	private DatabaseConnector databaseConnector;
+	private SelfDescriptionCache selfDescriptionCache;
+	private ArtifactRouteCache artifactRouteCache;
 	private Vertx vertx;
 	WebClient webClient;
 
@@ -45,41 +55,70 @@ public class DataAssetManager {
 	private static final String FINDBYDISTRIBUTIONID_QUERY = "SELECT * FROM Distribution WHERE id = $1";
 	private static final String FINDBYDATASETRESOURCEID_QUERY = "SELECT * FROM Dataset WHERE resourceid = $1";
 	private static final String FINDPUBLISHED_QUERY = "SELECT * FROM Dataset WHERE status = $1";
+	private static final String FINDPUBLISHEDBYIDS_QUERY = "SELECT * FROM Dataset WHERE status = $1 AND id = ANY($2)";
 	private static final String FINDALL_QUERY = "SELECT * FROM Dataset ORDER BY id DESC";
 	private static final String COUNT_QUERY = "SELECT COUNT(d) FROM Dataset d";
 	private static final String COUNTPUBLISHED_QUERY = "SELECT COUNT(d) FROM Dataset d WHERE d.status = $1";
 	private static final String CHANGESTATUS_UPDATE = "UPDATE Dataset SET status = $1, updated_at = NOW() WHERE id = $2";
-	private static final String FINDDISTRIBUTIONBYDATASETID_QUERY = "SELECT * FROM Distribution WHERE datasetId = $1";
+	private static final String CHANGESTATUS_BULK_UPDATE = "UPDATE Dataset SET status = $1, updated_at = NOW() WHERE id = ANY($2) AND status <> $1 RETURNING id";
+	private static final String CHANGESTATUS_ALL_UPDATE = "UPDATE Dataset SET status = $1, updated_at = NOW() WHERE status <> $1 RETURNING id";
+	private static final String FINDROUTE_QUERY = "SELECT dist.*, ds.id AS ds_id, ds.created_at AS ds_created_at, ds.updated_at AS ds_updated_at, " +
+			"ds.datasourcename AS ds_datasourcename, ds.datasourcetype AS ds_datasourcetype, ds.data AS ds_data, a.host AS adapter_host, a.port AS adapter_port, " +
+			"a.client_profile AS adapter_client_profile " +
+			"FROM Distribution dist JOIN Dataset d ON d.resourceid = dist.datasetid JOIN DataSource ds ON ds.id = d.sourceid " +
+			"LEFT JOIN adapters a ON a.name = ds.datasourcetype WHERE dist.id = $1";
+	private static final String FINDDISTRIBUTIONBYDATASETIDS_QUERY = "SELECT * FROM Distribution WHERE datasetid = ANY($1)";
 	private static final String INSERT_DATASET = "INSERT INTO Dataset (created_at, updated_at, resourceid, license, title, description, publisher, status, tags, version, sourceid, pid, author, data_access_level, additionalmetadata) " +
-			"VALUES (NOW(), NOW(), $1, $2, $3, $4, $5, $6, $7, $8, $9, $10, $11, $12, $13)";
+			"VALUES (NOW(), NOW(), $1, $2, $3, $4, $5, $6, $7, $8, $9, $10, $11, $12, $13) RETURNING id";
 	private static final String INSERT_DISTRIBUTION = "INSERT INTO Distribution (created_at, updated_at, resourceid, license, title, description, publisher, filename, filetype, byte_size, datasetid, additionalmetadata) " +
 			"VALUES (NOW(), NOW(), $1, $2, $3, $4, $5, $6, $7, $8, $9, $10)";
 
 	private static final String DELETE_DAT_UPDATE = "DELETE FROM dataset WHERE id = $1";
 	private static final String DELETE_DIST_UPDATE = "DELETE FROM distribution WHERE datasetid = $1";
 	
-	private static final String UPDATE_TAGS = "UPDATE dataset SET tags = $1, updated_at = NOW() WHERE resourceid = $2";
+	private static final String UPDATE_TAGS = "UPDATE dataset SET tags = $1, updated_at = NOW() WHERE resourceid = $2 RETURNING id";
 
 	public DataAssetManager(Vertx vertx) {
 		this.databaseConnector = DatabaseConnector.getInstance();
+		this.selfDescriptionCache = SelfDescriptionCache.getInstance();
+		this.artifactRouteCache = ArtifactRouteCache.getInstance();
 		this.vertx = vertx;
 		this.webClient = WebClient.create(vertx);
 	}
 
-	public void findDatasetById(Long id, Handler<AsyncResult<JsonObject>> resultHandler) {
-		querySingleEntry(id, FINDBYDATASETID_QUERY, resultHandler);
+	public void findDatasetById(Long id, Handler<AsyncResult<Dataset>> resultHandler) {
+		querySingleEntry(id, FINDBYDATASETID_QUERY, EntityMapper::toDataset, resultHandler);
 	}
 
-	public void findDatasetByResourceId(String resourceId, Handler<AsyncResult<JsonObject>> resultHandler) {
-		querySingleEntry(resourceId, FINDBYDATASETRESOURCEID_QUERY, resultHandler);
+	public void findDatasetByResourceId(String resourceId, Handler<AsyncResult<Dataset>> resultHandler) {
+		querySingleEntry(resourceId, FINDBYDATASETRESOURCEID_QUERY, EntityMapper::toDataset, resultHandler);
 	}
 
-	public void findDistributionById(Long id, Handler<AsyncResult<JsonObject>> resultHandler) {
-		querySingleEntry(id, FINDBYDISTRIBUTIONID_QUERY, resultHandler);
+	public void findDistributionById(Long id, Handler<AsyncResult<Distribution>> resultHandler) {
+		querySingleEntry(id, FINDBYDISTRIBUTIONID_QUERY, EntityMapper::toDistribution, resultHandler);
 	}
 
-	private void querySingleEntry(Object id, String query, Handler<AsyncResult<JsonObject>> resultHandler) {
-		databaseConnector.query(query, Tuple.tuple().addValue(id), reply -> {
+	/**
+	 * Resolves distribution, data source and adapter endpoint of an artifact with one joined query.
+	 * Resolved routes are cached per distribution id.
+	 */
+	public void findRoute(Long distributionId, Handler<AsyncResult<ArtifactRoute>> resultHandler) {
+		ArtifactRoute cached = artifactRouteCache.get(distributionId);
+		if (cached != null) {
+			resultHandler.handle(Future.succeededFuture(cached));
+			return;
+		}
+		long generation = artifactRouteCache.generation();
+		querySingleEntry(distributionId, FINDROUTE_QUERY, EntityMapper::toArtifactRoute, reply -> {
+			if (reply.succeeded()) {
+				artifactRouteCache.put(distributionId, generation, reply.result());
+			}
+			resultHandler.handle(reply);
+		});
+	}
+
+	private <T> void querySingleEntry(Object id, String query, Function<Row, T> mapper, Handler<AsyncResult<T>> resultHandler) {
+		databaseConnector.readQuery(query, Tuple.tuple().addValue(id), mapper, reply -> {
 			if (reply.failed()) {
 				LOGGER.error(reply.cause());
 				resultHandler.handle(Future.failedFuture(reply.cause()));
@@ -94,52 +133,66 @@ public class DataAssetManager {
 	}
 
 	private void findDatasetList(String query, Tuple tuple, Handler<AsyncResult<JsonArray>> resultHandler) {
-		databaseConnector.query(query, tuple, reply -> {
+		findDatasets(query, tuple, reply -> {
+			if (reply.succeeded()) {
+				JsonArray datasets = new JsonArray();
+				for (Dataset dataset : reply.result()) {
+					datasets.add(JsonObject.mapFrom(dataset));
+				}
+				resultHandler.handle(Future.succeededFuture(datasets));
+			} else {
+				resultHandler.handle(Future.failedFuture(reply.cause()));
+			}
+		});
+	}
+
+	/**
+	 * Loads the datasets and all of their distributions with a second, batched query.
+	 */
+	private void findDatasets(String query, Tuple tuple, Handler<AsyncResult<List<Dataset>>> resultHandler) {
+		databaseConnector.readQuery(query, tuple, EntityMapper::toDataset, reply -> {
 			if (reply.failed()) {
 				LOGGER.error(reply.cause());
 				resultHandler.handle(Future.failedFuture(reply.cause().toString()));
 			} else {
-				JsonArray jA = new JsonArray(reply.result());
-				Iterator iterator = jA.iterator();
-				List<Future> datasetFutureList = new ArrayList<>();
-				while (iterator.hasNext()) {
-					Promise<Dataset> promise = Promise.promise();
-					datasetFutureList.add(promise.future());
-					Dataset da = Json.decodeValue(iterator.next().toString(), Dataset.class);
-					buildDataset(da, promise);
+				addDistributions(reply.result(), resultHandler);
+			}
+		});
+	}
+
+	private void addDistributions(List<Dataset> datasets, Handler<AsyncResult<List<Dataset>>> next) {
+		if (datasets.isEmpty()) {
+			next.handle(Future.succeededFuture(datasets));
+			return;
+		}
+		Map<String, Set<Distribution>> distributions = new HashMap<>();
+		for (Dataset da : datasets) {
+			Set<Distribution> dists = distributions.computeIfAbsent(da.getResourceId(), k -> new HashSet<>());
+			da.setDistributions(dists);
+		}
+		String[] resourceIds = distributions.keySet().stream().filter(Objects::nonNull).toArray(String[]::new);
+		databaseConnector.readQuery(FINDDISTRIBUTIONBYDATASETIDS_QUERY, Tuple.tuple().addStringArray(resourceIds),
+				EntityMapper::toDistribution, reply -> {
+			if (reply.succeeded()) {
+				for (Distribution distribution : reply.result()) {
+					distributions.get(distribution.getDatasetId()).add(distribution);
 				}
-				CompositeFuture.all(datasetFutureList).onComplete(ac -> {
-					if (ac.succeeded()) {
-						List<Dataset> datasetList = new ArrayList<>();
-						for (Future fu : datasetFutureList) {
-							datasetList.add((Dataset) fu.result());
-						}
-						resultHandler.handle(Future.succeededFuture(new JsonArray(Json.encode(datasetList))));
-					} else {
-						LOGGER.error(ac.cause());
-						resultHandler.handle(Future.failedFuture(ac.cause()));
-					}
-				});
+				next.handle(Future.succeededFuture(datasets));
+			} else {
+				LOGGER.error(reply.cause());
+				next.handle(Future.failedFuture(reply.cause()));
 			}
 		});
 	}
 
-	public void findPublished(Handler<AsyncResult<JsonArray>> resultHandler) {
-		findDatasetList(FINDPUBLISHED_QUERY, Tuple.tuple().addInteger(DataAssetStatus.PUBLISHED.ordinal()),
+	public void findPublished(Handler<AsyncResult<List<Dataset>>> resultHandler) {
+		findDatasets(FINDPUBLISHED_QUERY, Tuple.tuple().addInteger(DataAssetStatus.PUBLISHED.ordinal()),
 				resultHandler);
 	}
 
-	private void buildDataset(Dataset da, Handler<AsyncResult<Dataset>> next) {
-		databaseConnector.query(FINDDISTRIBUTIONBYDATASETID_QUERY, Tuple.tuple().addString(da.getResourceId()), reply2 -> {
-			if(reply2.succeeded()){
-				Set<Distribution> dists = reply2.result().stream().map(jO ->
-						Json.decodeValue(jO.toString(), Distribution.class)).collect(Collectors.toSet());
-				da.setDistributions(dists);
-				next.handle(Future.succeededFuture(da));
-			} else {
-				next.handle(Future.failedFuture(reply2.cause()));
-			}
-		});
+	public void findPublishedByIds(List<Long> ids, Handler<AsyncResult<List<Dataset>>> resultHandler) {
+		findDatasets(FINDPUBLISHEDBYIDS_QUERY, Tuple.tuple().addInteger(DataAssetStatus.PUBLISHED.ordinal())
+				.addLongArray(ids.toArray(new Long[0])), resultHandler);
 	}
 
 	private String buildDataAssetAdditionalData(JsonObject dataAsset){
@@ -170,8 +223,57 @@ public class DataAssetManager {
 		findDatasetList(FINDALL_QUERY, Tuple.tuple(), resultHandler);
 	}
 
+	/**
+	 * Returns one page of data assets as {"items": [...], "next": id}. next is the cursor of the following page,
+	 * or null on the last page.
+	 */
+	public void findPage(DataAssetFilter filter, Handler<AsyncResult<JsonObject>> resultHandler) {
+		StringBuilder query = new StringBuilder("SELECT * FROM Dataset WHERE TRUE");
+		Tuple params = Tuple.tuple();
+		if (filter.getStatus() != null) {
+			params.addInteger(filter.getStatus().ordinal());
+			query.append(" AND status = $").append(params.size());
+		}
+		if (filter.getSourceId() != null) {
+			params.addLong(filter.getSourceId());
+			query.append(" AND sourceid = $").append(params.size());
+		}
+		if (filter.getTag() != null) {
+			params.addStringArray(new String[]{filter.getTag()});
+			query.append(" AND tags @> $").append(params.size());
+		}
+		if (filter.getText() != null) {
+			params.addString("%" + filter.getText().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+			query.append(" AND (title ILIKE $").append(params.size()).append(" OR description ILIKE $").append(params.size()).append(")");
+		}
+		if (filter.getAfter() != null) {
+			params.addLong(filter.getAfter());
+			query.append(" AND id < $").append(params.size());
+		}
+		params.addInteger(filter.getLimit() + 1);
+		query.append(" ORDER BY id DESC LIMIT $").append(params.size());
+
+		findDatasets(query.toString(), params, reply -> {
+			if (reply.succeeded()) {
+				List<Dataset> datasets = reply.result();
+				Long next = null;
+				if (datasets.size() > filter.getLimit()) {
+					datasets = datasets.subList(0, filter.getLimit());
+					next = datasets.get(datasets.size() - 1).getId();
+				}
+				JsonArray items = new JsonArray();
+				for (Dataset dataset : datasets) {
+					items.add(JsonObject.mapFrom(dataset));
+				}
+				resultHandler.handle(Future.succeededFuture(new JsonObject().put("items", items).put("next", next)));
+			} else {
+				resultHandler.handle(Future.failedFuture(reply.cause()));
+			}
+		});
+	}
+
 	public void count(Handler<AsyncResult<Long>> resultHandler) {
-		databaseConnector.query(COUNT_QUERY, Tuple.tuple(), reply -> {
+		databaseConnector.readQuery(COUNT_QUERY, Tuple.tuple(), reply -> {
 			if (reply.failed()) {
 				LOGGER.error(reply.cause());
 				resultHandler.handle(Future.failedFuture(reply.cause().toString()));
@@ -182,7 +284,7 @@ public class DataAssetManager {
 	}
 
 	public void countPublished(Handler<AsyncResult<Long>> resultHandler) {
-		databaseConnector.query(COUNTPUBLISHED_QUERY, Tuple.tuple().addInteger(DataAssetStatus.PUBLISHED.ordinal()),
+		databaseConnector.readQuery(COUNTPUBLISHED_QUERY, Tuple.tuple().addInteger(DataAssetStatus.PUBLISHED.ordinal()),
 				reply -> {
 					if (reply.failed()) {
 						LOGGER.error(reply.cause());
@@ -199,40 +301,73 @@ public class DataAssetManager {
 				LOGGER.error(reply.cause());
 				resultHandler.handle(Future.failedFuture(reply.cause().toString()));
 			} else {
+				selfDescriptionCache.invalidate(id);
 				resultHandler.handle(Future.succeededFuture());
 			}
 		});
 	}
 
+	/**
+	 * Sets the status of the given datasets, or of all datasets if ids is null, in a single statement.
+	 * Returns the ids of the datasets whose status actually changed.
+	 */
+	public void changeStatus(DataAssetStatus status, List<Long> ids, Handler<AsyncResult<List<Long>>> resultHandler) {
+		String statement;
+		Tuple params = Tuple.tuple().addInteger(status.ordinal());
+		if (ids == null) {
+			statement = CHANGESTATUS_ALL_UPDATE;
+		} else if (ids.isEmpty()) {
+			resultHandler.handle(Future.succeededFuture(new ArrayList<>()));
+			return;
+		} else {
+			statement = CHANGESTATUS_BULK_UPDATE;
+			params.addLongArray(ids.toArray(new Long[0]));
+		}
+		databaseConnector.query(statement, params, row -> row.getLong("id"), reply -> {
+			if (reply.failed()) {
+				LOGGER.error(reply.cause());
+				resultHandler.handle(Future.failedFuture(reply.cause().toString()));
+			} else {
+				for (Long id : reply.result()) {
+					selfDescriptionCache.invalidate(id);
+				}
+				resultHandler.handle(Future.succeededFuture(reply.result()));
+			}
+		});
+	}
+
+	/**
+	 * Inserts the dataset and its distributions in one transaction. The handler is called after the commit.
+	 */
 	public void add(JsonObject dataAssetJson, Handler<AsyncResult<Void>> resultHandler) {
 
-		Dataset dataAsset = Json.decodeValue(dataAssetJson.toString(),Dataset.class);
-		JsonObject dataAssetAdditionalData = processAdditionalMetadata(dataAsset);
-
-		Tuple datasetParams = Tuple.tuple()
-				.addString(checkNull(dataAsset.getResourceId()))
-				.addString(checkNull(dataAsset.getLicense()))
-				.addString(checkNull(dataAsset.getTitle()))
-				.addString(checkNull(dataAsset.getDescription()))
-				.addString(checkNull(dataAsset.getPublisher()))
-				.addInteger(dataAsset.getStatus() == null ? DataAssetStatus.UNAPPROVED.ordinal() : dataAsset.getStatus().ordinal())
-				.addStringArray(dataAsset.getTags() == null ||dataAsset.getTags().isEmpty() ? new String[0] : dataAsset.getTags().toArray(new String[0]))
-				.addString(checkNull(dataAsset.getVersion()))
-				.addLong(dataAsset.getSourceId())
-				.addString(checkNull(dataAssetAdditionalData.getJsonArray("pid").getString(0)))
-				.addString(checkNull(dataAssetAdditionalData.getJsonArray("author").getString(0)))
-				.addString(checkNull(dataAssetAdditionalData.getJsonArray("data_access_level").getString(0)));
-
-		datasetParams.addValue(processAdditionalMetadata(dataAsset));
-
-		databaseConnector.query(INSERT_DATASET, datasetParams, datasetReply -> {
-			if (datasetReply.failed()) {
-				LOGGER.error(datasetReply.cause());
-			} else {
+		Tuple datasetParams;
+		List<Tuple> distributionParams = new ArrayList<>();
+		try {
+			Dataset dataAsset = Json.decodeValue(dataAssetJson.toString(),Dataset.class);
+			JsonObject dataAssetAdditionalData = processAdditionalMetadata(dataAsset);
+
+			datasetParams = Tuple.tuple()
+					.addString(checkNull(dataAsset.getResourceId()))
+					.addString(checkNull(dataAsset.getLicense()))
+					.addString(checkNull(dataAsset.getTitle()))
+					.addString(checkNull(dataAsset.getDescription()))
+					.addString(checkNull(dataAsset.getPublisher()))
+					.addInteger(dataAsset.getStatus() == null ? DataAssetStatus.UNAPPROVED.ordinal() : dataAsset.getStatus().ordinal())
+					.addStringArray(dataAsset.getTags() == null ||dataAsset.getTags().isEmpty() ? new String[0] : dataAsset.getTags().toArray(new String[0]))
+					.addString(checkNull(dataAsset.getVersion()))
+					.addLong(dataAsset.getSourceId())
+					.addString(checkNull(dataAssetAdditionalData.getJsonArray("pid").getString(0)))
+					.addString(checkNull(dataAssetAdditionalData.getJsonArray("author").getString(0)))
+					.addString(checkNull(dataAssetAdditionalData.getJsonArray("data_access_level").getString(0)));
+
+			datasetParams.addValue(processAdditionalMetadata(dataAsset));
+
+			if (dataAsset.getDistributions() != null) {
 				for(Distribution distribution : dataAsset.getDistributions()){
 					JsonObject distributionAdditionalData = processAdditionalMetadata(distribution);
 
-					Tuple distributionParams = Tuple.tuple().addString(checkNull(distribution.getResourceId()))
+					Tuple params = Tuple.tuple().addString(checkNull(distribution.getResourceId()))
 							.addString(checkNull(distribution.getLicense()))
 							.addString(checkNull(distribution.getTitle()))
 							.addString(checkNull(distribution.getDescription()))
@@ -242,19 +377,49 @@ public class DataAssetManager {
 							.addInteger(Integer.parseInt(checkNull(distributionAdditionalData.getJsonArray("byte_size").getString(0))))
 							.addString(checkNull(dataAsset.getResourceId()));
 
-					distributionParams.addValue(processAdditionalMetadata(distribution));
-
-					databaseConnector.query(INSERT_DISTRIBUTION, distributionParams, distributionReply -> {
-						if (distributionReply.failed()) {
-							LOGGER.error(distributionReply.cause());
-						}
-					});
+					params.addValue(processAdditionalMetadata(distribution));
+					distributionParams.add(params);
 				}
 			}
+		} catch (RuntimeException e) {
+			LOGGER.error("DataAsset could not be prepared for insertion.", e);
+			resultHandler.handle(Future.failedFuture(e));
+			return;
+		}
+
+		databaseConnector.transaction(Arrays.asList("Dataset", "Distribution"), transaction -> insertDataset(transaction, datasetParams, distributionParams), reply -> {
+			if (reply.succeeded()) {
+				selfDescriptionCache.invalidate(reply.result());
+				resultHandler.handle(Future.succeededFuture());
+			} else {
+				LOGGER.error(reply.cause());
+				resultHandler.handle(Future.failedFuture(reply.cause()));
+			}
 		});
-		resultHandler.handle(Future.succeededFuture());
 	}
-	
+
+	private Future<Long> insertDataset(SqlClient transaction, Tuple datasetParams, List<Tuple> distributionParams) {
+		Promise<Long> promise = Promise.promise();
+		transaction.preparedQuery(INSERT_DATASET).execute(datasetParams, datasetReply -> {
+			if (datasetReply.failed()) {
+				promise.fail(datasetReply.cause());
+				return;
+			}
+			Long datasetId = datasetReply.result().iterator().next().getLong("id");
+			if (distributionParams.isEmpty()) {
+				promise.complete(datasetId);
+				return;
+			}
+			transaction.preparedQuery(INSERT_DISTRIBUTION).executeBatch(distributionParams, distributionReply -> {
+				if (distributionReply.succeeded()) {
+					promise.complete(datasetId);
+				} else {
+					promise.fail(distributionReply.cause());
+				}
+			});
+		});
+		return promise.future();
+	}
 
 	public void updateTagsFromDescription(Dataset dataAsset, Handler<AsyncResult<JsonObject>> resultHandler) {
 
@@ -317,6 +482,9 @@ public class DataAssetManager {
 									if (reply.failed()) {
 										LOGGER.error(reply.cause());
 									} else {
+										for (JsonObject updated : reply.result()) {
+											selfDescriptionCache.invalidate(updated.getLong("id"));
+										}
 										JsonObject jO = new JsonObject();
 										String [] newTags = params.getStringArray(0);
 										
@@ -367,9 +535,13 @@ public class DataAssetManager {
 		findDatasetById(id, daReply -> {
 			if (daReply.succeeded()) {
 				databaseConnector.query(DELETE_DIST_UPDATE,
-						Tuple.tuple().addString(daReply.result().getString("resourceid")), distReply -> {
+						Tuple.tuple().addString(daReply.result().getResourceId()), distReply -> {
+							selfDescriptionCache.invalidate(id);
+							artifactRouteCache.invalidate();
 						});
 				databaseConnector.query(DELETE_DAT_UPDATE, Tuple.tuple().addLong(id), datReply -> {
+					selfDescriptionCache.invalidate(id);
+					artifactRouteCache.invalidate();
 				});
 				resultHandler.handle(Future.succeededFuture());
 
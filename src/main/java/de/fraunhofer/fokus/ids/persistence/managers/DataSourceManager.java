@@ -2,6 +2,8 @@ package de.fraunhofer.fokus.ids.persistence.managers;
 
 import de.fraunhofer.fokus.ids.persistence.entities.DataSource;
 import de.fraunhofer.fokus.ids.persistence.util.DatabaseConnector;
+import de.fraunhofer.fokus.ids.persistence.util.EntityMapper;
+import de.fraunhofer.fokus.ids.services.ArtifactRouteCache;
 import io.vertx.core.*;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
@@ -44,6 +46,7 @@ public class DataSourceManager {
                 LOGGER.error(reply.cause());
                 resultHandler.handle(Future.failedFuture(reply.cause().toString()));
             } else {
+                ArtifactRouteCache.getInstance().invalidate();
                 resultHandler.handle(Future.succeededFuture());
             }
         });
@@ -73,13 +76,14 @@ public class DataSourceManager {
                 LOGGER.error(reply.cause());
                 resultHandler.handle(Future.failedFuture(reply.cause().toString()));
             } else {
+                ArtifactRouteCache.getInstance().invalidate();
                 resultHandler.handle(Future.succeededFuture());
             }
         });
     }
 
     public void findByType(String type, Handler<AsyncResult<JsonArray>> resultHandler) {
-        databaseConnector.query(FINDBYTYPE_QUERY, Tuple.tuple().addString(type), reply -> {
+        databaseConnector.readQuery(FINDBYTYPE_QUERY, Tuple.tuple().addString(type), reply -> {
             if (reply.failed()) {
                 LOGGER.error(reply.cause());
                 resultHandler.handle(Future.failedFuture(reply.cause().toString()));
@@ -90,7 +94,7 @@ public class DataSourceManager {
     }
 
     public void findById(Long id, Handler<AsyncResult<JsonObject>> resultHandler) {
-        databaseConnector.query(FINDBYID_QUERY,Tuple.tuple().addLong(id), reply -> {
+        databaseConnector.readQuery(FINDBYID_QUERY,Tuple.tuple().addLong(id), reply -> {
             if (reply.failed()) {
                 LOGGER.error(reply.cause());
                 resultHandler.handle(Future.failedFuture(reply.cause().toString()));
@@ -100,8 +104,21 @@ public class DataSourceManager {
         });
     }
 
+    public void findEntityById(Long id, Handler<AsyncResult<DataSource>> resultHandler) {
+        databaseConnector.readQuery(FINDBYID_QUERY, Tuple.tuple().addLong(id), EntityMapper::toDataSource, reply -> {
+            if (reply.failed()) {
+                LOGGER.error(reply.cause());
+                resultHandler.handle(Future.failedFuture(reply.cause().toString()));
+            } else if (reply.result().isEmpty()) {
+                resultHandler.handle(Future.failedFuture("Id not in database"));
+            } else {
+                resultHandler.handle(Future.succeededFuture(reply.result().get(0)));
+            }
+        });
+    }
+
     public void findAll(Handler<AsyncResult<JsonArray>> resultHandler) {
-        databaseConnector.query(FINDALL_QUERY ,Tuple.tuple(), reply -> {
+        databaseConnector.readQuery(FINDALL_QUERY ,Tuple.tuple(), reply -> {
             if (reply.failed()) {
                 LOGGER.error(reply.cause());
                 resultHandler.handle(Future.failedFuture(reply.cause().toString()));
@@ -112,7 +129,7 @@ public class DataSourceManager {
     }
 
     public void findTypeById(Long id, Handler<AsyncResult<Long>> resultHandler) {
-        databaseConnector.query(FINDTYPEBYID_QUERY, Tuple.tuple().addLong(id), reply -> {
+        databaseConnector.readQuery(FINDTYPEBYID_QUERY, Tuple.tuple().addLong(id), reply -> {
             if (reply.failed()) {
                 LOGGER.error(reply.cause());
                 resultHandler.handle(Future.failedFuture(reply.cause().toString()));
@@ -123,7 +140,7 @@ public class DataSourceManager {
     }
 
     public void findAllByType(Handler<AsyncResult<JsonObject>> resultHandler) {
-        databaseConnector.query( FINDALLBYTYPE_QUERY ,Tuple.tuple(), reply -> {
+        databaseConnector.readQuery( FINDALLBYTYPE_QUERY ,Tuple.tuple(), reply -> {
             if (reply.failed()) {
                 LOGGER.error(reply.cause());
                 resultHandler.handle(Future.failedFuture(reply.cause().toString()));
@@ -46,7 +46,7 @@ public class JobManager {
 	}
 
 	public void findAll(Handler<AsyncResult<JsonArray>> resultHandler) {
-		databaseConnector.query(FINDALL_QUERY, Tuple.tuple(), reply -> {
+		databaseConnector.readQuery(FINDALL_QUERY, Tuple.tuple(), reply -> {
 			if (reply.failed()) {
 				LOGGER.error(reply.cause());
 				resultHandler.handle(Future.failedFuture(reply.cause().toString()));
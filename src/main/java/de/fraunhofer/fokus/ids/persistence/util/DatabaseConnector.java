@@ -1,6 +1,7 @@
 package de.fraunhofer.fokus.ids.persistence.util;
 
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
@@ -14,8 +15,20 @@ import io.vertx.pgclient.PgConnectOptions;
 import io.vertx.pgclient.PgPool;
 import io.vertx.sqlclient.*;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 /**
  * @author Vincent Bohlen, vincent.bohlen@fokus.fraunhofer.de
  *
@@ -52,9 +65,41 @@ public class DatabaseConnector {
 
     private Logger LOGGER = LoggerFactory.getLogger(DatabaseConnector.class.getName());
     private PgPool client;
+    private PoolOptions poolOptions;
     private RowTransformer rowTransformer;
     private static final DatabaseConnector DBC = new DatabaseConnector();
 
+    private static final int DEFAULT_MAX_POOL_SIZE = 5;
+    private static final int DEFAULT_MAX_WAIT_QUEUE_SIZE = -1;
+    private static final int DEFAULT_PIPELINING_LIMIT = 256;
+    private static final int DEFAULT_PREPARED_STATEMENT_CACHE_SIZE = 256;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 60000;
+    private static final int DEFAULT_IDLE_TIMEOUT = 0;
+    private static final long DEFAULT_READ_YOUR_WRITES_WINDOW = 5000;
+    private static final String ALL_TABLES = "*";
+    private static final Pattern WRITTEN_TABLE = Pattern.compile("^\\s*(?:INSERT\\s+INTO|UPDATE|DELETE\\s+FROM)\\s+([\\w.]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern READ_TABLE = Pattern.compile("\\b(?:FROM|JOIN)\\s+([A-Za-z_][\\w.]*)", Pattern.CASE_INSENSITIVE);
+
+    private final AtomicLong inUse = new AtomicLong();
+    private final AtomicLong waiting = new AtomicLong();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong acquireFailures = new AtomicLong();
+    private final AtomicLong waitTimeTotal = new AtomicLong();
+    private final AtomicLong waitTimeMax = new AtomicLong();
+    private final Deque<Statement> queuedStatements = new ArrayDeque<>();
+    private int runningStatements;
+    private final AtomicLong activeQueries = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong queryFailures = new AtomicLong();
+    private final AtomicLong queryTimeTotal = new AtomicLong();
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong replicaFallbacks = new AtomicLong();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private volatile List<PgPool> replicas = new ArrayList<>();
+    private volatile long readYourWritesWindow = DEFAULT_READ_YOUR_WRITES_WINDOW;
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
     private final String CREATE_PRIMARY_KEY = "PRIMARY KEY(1)";
     private final String ADD_PRIMARY_KEY = "ADD PRIMARY KEY(1)";
     private final String ADD_FOREIGN_KEY = "ALTER TABLE 1 DROP CONSTRAINT IF EXISTS 2,ADD CONSTRAINT 2 FOREIGN KEY(3) REFERENCES 4(5)";
@@ -67,46 +112,395 @@ public class DatabaseConnector {
         return DBC;
     }
 
-    public void create(Vertx vertx, JsonObject config, int maxPoolSize){
+    /**
+     * Creates the pool from DB_CONFIG. Besides the connection settings it accepts maxPoolSize, maxWaitQueueSize
+     * (-1 is unbounded), pipeliningLimit, preparedStatementCacheMaxSize (0 disables the cache),
+     * connectTimeout (ms) and idleTimeout (s, 0 keeps idle connections open).
+     * The optional replicas array lists read replicas, each entry overrides the connection settings of the primary,
+     * e.g. [{"host":"db-replica"}]. readYourWritesWindow (ms) is the time after a write to a table in which reads of
+     * that table stay on the primary.
+     */
+    public void create(Vertx vertx, JsonObject config){
         if(client == null) {
-            PgConnectOptions connectOptions = new PgConnectOptions()
-                    .setPort(config.getInteger("port"))
-                    .setHost(config.getString("host"))
-                    .setDatabase(config.getString("database"))
-                    .setUser(config.getString("user"))
-                    .setPassword(config.getString("password"));
-
-            PoolOptions poolOptions = new PoolOptions()
-                    .setMaxSize(maxPoolSize);
+            this.poolOptions = new PoolOptions()
+                    .setMaxSize(config.getInteger("maxPoolSize", DEFAULT_MAX_POOL_SIZE))
+                    .setMaxWaitQueueSize(config.getInteger("maxWaitQueueSize", DEFAULT_MAX_WAIT_QUEUE_SIZE));
 
+            PgConnectOptions connectOptions = connectOptions(config);
             this.client = PgPool.pool(vertx, connectOptions, poolOptions);
+            LOGGER.info("Database pool created with " + poolOptions.getMaxSize() + " connections, wait queue "
+                    + poolOptions.getMaxWaitQueueSize() + ", pipelining limit " + connectOptions.getPipeliningLimit() + ".");
+
+            List<PgPool> replicaPools = new ArrayList<>();
+            JsonArray replicaConfigs = config.getJsonArray("replicas", new JsonArray());
+            for (int i = 0; i < replicaConfigs.size(); i++) {
+                JsonObject replicaConfig = config.copy().mergeIn(replicaConfigs.getJsonObject(i));
+                replicaPools.add(PgPool.pool(vertx, connectOptions(replicaConfig), poolOptions));
+                LOGGER.info("Read replica pool created for " + replicaConfig.getString("host") + ":" + replicaConfig.getInteger("port") + ".");
+            }
+            this.replicas = replicaPools;
+            this.readYourWritesWindow = config.getLong("readYourWritesWindow", DEFAULT_READ_YOUR_WRITES_WINDOW);
         } else {
             LOGGER.info("Client already initialized.");
         }
     }
 
-    public void query(String query, Tuple params, Handler<AsyncResult<List<JsonObject>>> resultHandler){
-        client.getConnection(ar1 -> {
-            if (ar1.succeeded()) {
-                SqlConnection conn = ar1.result();
-                conn.preparedQuery(query)
-                        .execute(params, ar2 -> {
-                            if (ar2.succeeded()) {
-                                resultHandler.handle(Future.succeededFuture(rowTransformer.transform(ar2.result())));
-                                conn.close();
-                            } else {
-                                conn.close();
-                                LOGGER.error(ar2.cause());
-                                resultHandler.handle(Future.failedFuture(ar2.cause()));
-                            }
-                        });
+    private PgConnectOptions connectOptions(JsonObject config) {
+        PgConnectOptions connectOptions = new PgConnectOptions()
+                .setPort(config.getInteger("port"))
+                .setHost(config.getString("host"))
+                .setDatabase(config.getString("database"))
+                .setUser(config.getString("user"))
+                .setPassword(config.getString("password"))
+                .setPipeliningLimit(config.getInteger("pipeliningLimit", DEFAULT_PIPELINING_LIMIT));
+        int statementCacheSize = config.getInteger("preparedStatementCacheMaxSize", DEFAULT_PREPARED_STATEMENT_CACHE_SIZE);
+        connectOptions.setCachePreparedStatements(statementCacheSize > 0);
+        connectOptions.setPreparedStatementCacheMaxSize(Math.max(statementCacheSize, 1));
+        connectOptions.setConnectTimeout(config.getInteger("connectTimeout", DEFAULT_CONNECT_TIMEOUT));
+        connectOptions.setIdleTimeout(config.getInteger("idleTimeout", DEFAULT_IDLE_TIMEOUT));
+        return connectOptions;
+    }
+
+    public JsonObject getMetrics() {
+        int running;
+        int queued;
+        synchronized (queuedStatements) {
+            running = runningStatements;
+            queued = queuedStatements.size();
+        }
+        long count = acquired.get();
+        long queryCount = queries.get();
+        return new JsonObject()
+                .put("maxSize", poolOptions == null ? 0 : poolOptions.getMaxSize())
+                .put("maxWaitQueueSize", poolOptions == null ? 0 : poolOptions.getMaxWaitQueueSize())
+                .put("inUse", inUse.get() + running)
+                .put("waiting", waiting.get() + queued)
+                .put("acquired", count)
+                .put("acquireFailures", acquireFailures.get())
+                .put("waitTime", new JsonObject()
+                        .put("avgMs", count == 0 ? 0 : waitTimeTotal.get() / count)
+                        .put("maxMs", waitTimeMax.get()))
+                .put("activeQueries", activeQueries.get())
+                .put("queries", queryCount)
+                .put("queryFailures", queryFailures.get())
+                .put("queryTime", new JsonObject()
+                        .put("avgMs", queryCount == 0 ? 0 : queryTimeTotal.get() / queryCount))
+                .put("replicas", new JsonObject()
+                        .put("count", replicas.size())
+                        .put("replicaReads", replicaReads.get())
+                        .put("primaryReads", primaryReads.get())
+                        .put("fallbacks", replicaFallbacks.get()));
+    }
+
+    /**
+     * Checks out a connection for statements that have to run on the same connection, e.g. schema changes and
+     * transactions, and records the time spent waiting for it. Connections have to be returned with release.
+     */
+    private void acquire(Handler<AsyncResult<SqlConnection>> resultHandler) {
+        long start = System.currentTimeMillis();
+        waiting.incrementAndGet();
+        client.getConnection(ar -> {
+            waiting.decrementAndGet();
+            if (ar.succeeded()) {
+                inUse.incrementAndGet();
+                recordWait(System.currentTimeMillis() - start);
             } else {
-                LOGGER.error(ar1.cause());
-                resultHandler.handle(Future.failedFuture(ar1.cause()));
+                acquireFailures.incrementAndGet();
             }
+            resultHandler.handle(ar);
         });
     }
 
+    private void release(SqlConnection connection) {
+        inUse.decrementAndGet();
+        connection.close();
+        synchronized (queuedStatements) {
+            admitQueuedStatements(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * The pool does not report how long a single statement waits for a connection. Statements on the primary are
+     * therefore counted like checked out connections: a statement gets one of the maxSize connections if one is
+     * free, otherwise it waits in FIFO order until a statement finishes or a connection is released. A statement
+     * that finishes while still waiting, e.g. because it was pipelined, waited for its whole run time.
+     */
+    private Statement startStatement(Pool pool) {
+        Statement statement = new Statement(System.currentTimeMillis());
+        if (pool != client || poolOptions == null) {
+            return statement;
+        }
+        synchronized (queuedStatements) {
+            queuedStatements.add(statement);
+            admitQueuedStatements(statement.start);
+        }
+        return statement;
+    }
+
+    private void finishStatement(Statement statement) {
+        long now = System.currentTimeMillis();
+        synchronized (queuedStatements) {
+            if (statement.running) {
+                runningStatements--;
+            } else if (queuedStatements.remove(statement)) {
+                recordWait(now - statement.start);
+            }
+            admitQueuedStatements(now);
+        }
+    }
+
+    private void admitQueuedStatements(long now) {
+        while (!queuedStatements.isEmpty() && runningStatements + inUse.get() < poolOptions.getMaxSize()) {
+            Statement next = queuedStatements.poll();
+            next.running = true;
+            runningStatements++;
+            recordWait(now - next.start);
+        }
+    }
+
+    private void recordWait(long waitTime) {
+        acquired.incrementAndGet();
+        waitTimeTotal.addAndGet(waitTime);
+        waitTimeMax.accumulateAndGet(waitTime, Math::max);
+    }
+
+    private static class Statement {
+        private final long start;
+        private boolean running;
+
+        private Statement(long start) {
+            this.start = start;
+        }
+    }
+
+    /**
+     * Runs a single statement directly on the primary pool. The pool picks any free connection, uses its prepared
+     * statement cache and pipelines the statement, no connection is checked out.
+     */
+    public void query(String query, Tuple params, Handler<AsyncResult<List<JsonObject>>> handler){
+        execute(client, query, params, rowTransformer::transform, trackWrite(query, handler));
+    }
+
+    /**
+     * Like query, but maps every row with the given mapper, e.g. one of the EntityMapper methods.
+     */
+    public <T> void query(String query, Tuple params, Function<Row, T> mapper, Handler<AsyncResult<List<T>>> handler){
+        execute(client, query, params, rowMapper(mapper), trackWrite(query, handler));
+    }
+
+    /**
+     * Runs a read-only query on the next read replica. Falls back to the primary if no replica is configured,
+     * the replica fails, or one of the tables read was written within the read-your-writes window.
+     */
+    public void readQuery(String query, Tuple params, Handler<AsyncResult<List<JsonObject>>> handler){
+        read(query, params, rowTransformer::transform, handler);
+    }
+
+    /**
+     * Like readQuery, but maps every row with the given mapper.
+     */
+    public <T> void readQuery(String query, Tuple params, Function<Row, T> mapper, Handler<AsyncResult<List<T>>> handler){
+        read(query, params, rowMapper(mapper), handler);
+    }
+
+    private <T> void read(String query, Tuple params, RowSetMapper<T> mapper, Handler<AsyncResult<List<T>>> handler){
+        List<PgPool> pools = replicas;
+        if (pools.isEmpty() || recentlyWritten(query)) {
+            primaryReads.incrementAndGet();
+            execute(client, query, params, mapper, handler);
+            return;
+        }
+        replicaReads.incrementAndGet();
+        PgPool replica = pools.get(Math.floorMod(nextReplica.getAndIncrement(), pools.size()));
+        execute(replica, query, params, mapper, ar -> {
+            if (ar.succeeded()) {
+                handler.handle(ar);
+            } else {
+                replicaFallbacks.incrementAndGet();
+                LOGGER.info("Read replica failed, query is retried on the primary.");
+                execute(client, query, params, mapper, handler);
+            }
+        });
+    }
+
+    private <T> RowSetMapper<T> rowMapper(Function<Row, T> mapper) {
+        return rows -> {
+            List<T> result = new ArrayList<>();
+            for (Row row : rows) {
+                result.add(mapper.apply(row));
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Reads of the written tables in the following readYourWritesWindow go to the primary, so that callers see
+     * their own writes. Reads of other tables keep using the replicas.
+     */
+    private <T> Handler<AsyncResult<T>> trackWrite(Collection<String> tables, Handler<AsyncResult<T>> handler) {
+        markWritten(tables);
+        return ar -> {
+            markWritten(tables);
+            handler.handle(ar);
+        };
+    }
+
+    /**
+     * Every statement except a SELECT counts as a write. The table is taken from INSERT INTO, UPDATE or
+     * DELETE FROM, any other statement, e.g. DDL, counts as a write to all tables.
+     */
+    private <T> Handler<AsyncResult<T>> trackWrite(String query, Handler<AsyncResult<T>> handler) {
+        if (query.trim().regionMatches(true, 0, "SELECT", 0, 6)) {
+            return handler;
+        }
+        Matcher matcher = WRITTEN_TABLE.matcher(query);
+        return trackWrite(Collections.singletonList(matcher.find() ? matcher.group(1) : ALL_TABLES), handler);
+    }
+
+    private void markWritten(Collection<String> tables) {
+        long now = System.currentTimeMillis();
+        for (String table : tables) {
+            lastWrites.put(table.toLowerCase(Locale.ROOT), now);
+        }
+    }
+
+    private boolean recentlyWritten(String query) {
+        long since = System.currentTimeMillis() - readYourWritesWindow;
+        if (lastWrites.getOrDefault(ALL_TABLES, 0L) > since) {
+            return true;
+        }
+        Matcher matcher = READ_TABLE.matcher(query);
+        while (matcher.find()) {
+            if (lastWrites.getOrDefault(matcher.group(1).toLowerCase(Locale.ROOT), 0L) > since) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private <T> void execute(Pool pool, String query, Tuple params, RowSetMapper<T> mapper, Handler<AsyncResult<List<T>>> handler){
+        Handler<AsyncResult<List<T>>> resultHandler = onCallerContext(handler);
+        Statement statement = startStatement(pool);
+        activeQueries.incrementAndGet();
+        pool.preparedQuery(query)
+                .execute(params, ar -> {
+                    finishStatement(statement);
+                    activeQueries.decrementAndGet();
+                    queries.incrementAndGet();
+                    queryTimeTotal.addAndGet(System.currentTimeMillis() - statement.start);
+                    if (ar.succeeded()) {
+                        List<T> result;
+                        try {
+                            result = mapper.map(ar.result());
+                        } catch (RuntimeException e) {
+                            queryFailures.incrementAndGet();
+                            LOGGER.error("Result could not be mapped.", e);
+                            resultHandler.handle(Future.failedFuture(e));
+                            return;
+                        }
+                        resultHandler.handle(Future.succeededFuture(result));
+                    } else {
+                        queryFailures.incrementAndGet();
+                        LOGGER.error(ar.cause());
+                        resultHandler.handle(Future.failedFuture(ar.cause()));
+                    }
+                });
+    }
+
+    /**
+     * Runs the work in a transaction on a checked out connection. The transaction is committed when the future
+     * returned by the work succeeds and rolled back otherwise. The handler is called after commit or rollback.
+     * The work counts as a write to all tables.
+     */
+    public <T> void transaction(Function<SqlClient, Future<T>> work, Handler<AsyncResult<T>> handler){
+        transaction(Collections.singletonList(ALL_TABLES), work, handler);
+    }
+
+    /**
+     * Like transaction, but only reads of the given tables written by the work are kept on the primary.
+     */
+    public <T> void transaction(Collection<String> tables, Function<SqlClient, Future<T>> work, Handler<AsyncResult<T>> handler){
+        Handler<AsyncResult<T>> resultHandler = onCallerContext(trackWrite(tables, handler));
+        acquire(ar -> {
+            if (ar.failed()) {
+                LOGGER.error(ar.cause());
+                resultHandler.handle(Future.failedFuture(ar.cause()));
+                return;
+            }
+            SqlConnection conn = ar.result();
+            Transaction transaction = conn.begin();
+            Future<T> workFuture;
+            try {
+                workFuture = work.apply(transaction);
+            } catch (RuntimeException e) {
+                workFuture = Future.failedFuture(e);
+            }
+            workFuture.onComplete(workReply -> {
+                if (workReply.succeeded()) {
+                    transaction.commit(commitReply -> {
+                        release(conn);
+                        if (commitReply.succeeded()) {
+                            resultHandler.handle(Future.succeededFuture(workReply.result()));
+                        } else {
+                            LOGGER.error("Commit failed.", commitReply.cause());
+                            resultHandler.handle(Future.failedFuture(commitReply.cause()));
+                        }
+                    });
+                } else {
+                    LOGGER.error("Transaction is rolled back.", workReply.cause());
+                    transaction.rollback(rollbackReply -> {
+                        release(conn);
+                        resultHandler.handle(Future.failedFuture(workReply.cause()));
+                    });
+                }
+            });
+        });
+    }
+
+    /**
+     * Runs a statement without parameters, e.g. DDL, with the simple query protocol.
+     */
+    public void update(String statement, Handler<AsyncResult<Void>> handler){
+        Handler<AsyncResult<Void>> resultHandler = onCallerContext(trackWrite(statement, handler));
+        Statement running = startStatement(client);
+        activeQueries.incrementAndGet();
+        client.query(statement).execute(ar -> {
+            finishStatement(running);
+            activeQueries.decrementAndGet();
+            queries.incrementAndGet();
+            queryTimeTotal.addAndGet(System.currentTimeMillis() - running.start);
+            if (ar.succeeded()) {
+                resultHandler.handle(Future.succeededFuture());
+            } else {
+                queryFailures.incrementAndGet();
+                LOGGER.error(ar.cause());
+                resultHandler.handle(Future.failedFuture(ar.cause()));
+            }
+        });
+    }
+
+    private interface RowSetMapper<T> {
+        List<T> map(RowSet<Row> rows);
+    }
+
+    /**
+     * The pool completes its callbacks on the context it was created on. The HTTP verticle runs in several
+     * instances, so results are handed back to the context of the caller to keep its work on its own event loop.
+     */
+    private <T> Handler<AsyncResult<T>> onCallerContext(Handler<AsyncResult<T>> handler) {
+        Context caller = Vertx.currentContext();
+        if (caller == null) {
+            return handler;
+        }
+        return ar -> {
+            if (Vertx.currentContext() == caller) {
+                handler.handle(ar);
+            } else {
+                caller.runOnContext(v -> handler.handle(ar));
+            }
+        };
+    }
+
     public void initTable(JsonObject columInfo,
                                  String tableName,
                                  Handler<AsyncResult<List<JsonObject>>> resultHandler) {
@@ -116,7 +510,7 @@ public class DatabaseConnector {
             if(!e.getKey().equals("primary_key") && !e.getKey().equals("foreign_key") && !e.getKey().equals("ref_key") && !e.getKey().equals("ref_table"))
                 keys.add(e.getKey());
         });
-            client.getConnection( ar -> {
+            acquire( ar -> {
                 if(ar.succeeded()){
                     SqlConnection conn = ar.result();
                     conn.query("select * from " + tableName).execute( r -> {
@@ -140,6 +534,8 @@ public class DatabaseConnector {
                                         addColumns(conn,tableName,keys,columInfo,resultHandler);
                                     } else {
                                         LOGGER.info("Delete columns " + strings.toString() + " failed!");
+                                        resultHandler.handle(Future.failedFuture(delete.cause()));
+                                        release(conn);
                                     }
                                 });
                             }
@@ -165,11 +561,11 @@ public class DatabaseConnector {
                             conn.query(query).execute(resultAsyncResult -> {
                                 if (resultAsyncResult.succeeded()) {
                                     resultHandler.handle(Future.succeededFuture(new ArrayList<>()));
-                                    conn.close();
+                                    release(conn);
                                 } else {
                                     LOGGER.error("Update failed.", resultAsyncResult.cause());
                                     resultHandler.handle(Future.failedFuture(resultAsyncResult.cause()));
-                                    conn.close();
+                                    release(conn);
                                 }
                             });
 
@@ -197,28 +593,28 @@ public class DatabaseConnector {
             if (add.succeeded()) {
                 LOGGER.info("Columns added");
                 resultHandler.handle(Future.succeededFuture(new ArrayList<>()));
-                connection.close();
+                release(connection);
             } else {
                 LOGGER.info("Add failed: " + add.cause());
                 resultHandler.handle(Future.failedFuture(add.cause()));
-                connection.close();
+                release(connection);
             }
         });
     }
 
     public void createAddForeignKeys(String table, JsonObject tableInfo, Handler<AsyncResult<List<JsonObject>>> resultHandler){
-        client.getConnection(conn ->{
+        acquire(conn ->{
             if(conn.succeeded()){
                 String query = getForeignKeyStatement(table, tableInfo);
                 conn.result().query(query).execute(re ->{
                     if(re.succeeded()){
                         LOGGER.info("Foreign key added");
                         resultHandler.handle(Future.succeededFuture(new ArrayList<>()));
-                        conn.result().close();
+                        release(conn.result());
                     } else {
                         LOGGER.info("Foreign key adding failed: " + re.cause());
                         resultHandler.handle(Future.failedFuture(re.cause()));
-                        conn.result().close();
+                        release(conn.result());
                     }
                 });
             } else {
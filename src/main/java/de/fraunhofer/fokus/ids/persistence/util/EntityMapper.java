@@ -0,0 +1,132 @@
+package de.fraunhofer.fokus.ids.persistence.util;
+
+import de.fraunhofer.fokus.ids.models.ArtifactRoute;
+import de.fraunhofer.fokus.ids.persistence.entities.DataSource;
+import de.fraunhofer.fokus.ids.persistence.entities.Dataset;
+import de.fraunhofer.fokus.ids.persistence.entities.Distribution;
+import de.fraunhofer.fokus.ids.persistence.entities.Resource;
+import de.fraunhofer.fokus.ids.persistence.enums.DataAssetStatus;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Maps rows of the Dataset, Distribution and DataSource tables directly to their entities,
+ * without building a JsonObject and decoding it again.
+ */
+public class EntityMapper {
+
+    private EntityMapper() {
+    }
+
+    public static Dataset toDataset(Row row) {
+        Dataset dataset = new Dataset();
+        mapResource(row, dataset);
+        Integer status = row.getInteger("status");
+        dataset.setStatus(status == null ? null : DataAssetStatus.values()[status]);
+        String[] tags = row.getStringArray("tags");
+        dataset.setTags(tags == null ? null : new HashSet<>(Arrays.asList(tags)));
+        dataset.setVersion(row.getString("version"));
+        dataset.setSourceId(row.getLong("sourceid"));
+        dataset.setPid(row.getString("pid"));
+        dataset.setAuthor(row.getString("author"));
+        dataset.setData_access_level(row.getString("data_access_level"));
+        dataset.setAdditionalmetadata(toAdditionalMetadata(row.getValue("additionalmetadata")));
+        return dataset;
+    }
+
+    public static Distribution toDistribution(Row row) {
+        Distribution distribution = new Distribution();
+        mapResource(row, distribution);
+        distribution.setFilename(row.getString("filename"));
+        distribution.setFiletype(row.getString("filetype"));
+        Integer byteSize = row.getInteger("byte_size");
+        distribution.setByte_size(byteSize == null ? 0 : byteSize);
+        distribution.setDatasetId(row.getString("datasetid"));
+        distribution.setAdditionalmetadata(toAdditionalMetadata(row.getValue("additionalmetadata")));
+        return distribution;
+    }
+
+    public static DataSource toDataSource(Row row) {
+        return toDataSource(row, "");
+    }
+
+    /**
+     * Maps the joined route of an artifact, see DataAssetManager.findRoute.
+     */
+    public static ArtifactRoute toArtifactRoute(Row row) {
+        ArtifactRoute route = new ArtifactRoute();
+        route.setDistribution(toDistribution(row));
+        route.setDataSource(toDataSource(row, "ds_"));
+        String host = row.getString("adapter_host");
+        if (host != null) {
+            JsonObject adapter = new JsonObject().put("host", host).put("port", row.getInteger("adapter_port"));
+            Object client = row.getValue("adapter_client_profile");
+            if (client instanceof String) {
+                client = RowTransformer.decodeJson((String) client);
+            }
+            if (client instanceof JsonObject) {
+                adapter.put("client", client);
+            }
+            route.setAdapter(adapter);
+        }
+        return route;
+    }
+
+    private static DataSource toDataSource(Row row, String prefix) {
+        DataSource dataSource = new DataSource();
+        dataSource.setId(row.getLong(prefix + "id"));
+        dataSource.setCreatedAt(toInstant(row.getLocalDateTime(prefix + "created_at")));
+        dataSource.setUpdatedAt(toInstant(row.getLocalDateTime(prefix + "updated_at")));
+        dataSource.setDatasourceName(row.getString(prefix + "datasourcename"));
+        dataSource.setDatasourceType(row.getString(prefix + "datasourcetype"));
+        Object data = row.getValue(prefix + "data");
+        if (data instanceof String) {
+            data = RowTransformer.decodeJson((String) data);
+        }
+        dataSource.setData(data instanceof JsonObject ? (JsonObject) data : new JsonObject());
+        return dataSource;
+    }
+
+    private static void mapResource(Row row, Resource resource) {
+        resource.setId(row.getLong("id"));
+        resource.setCreatedAt(toInstant(row.getLocalDateTime("created_at")));
+        resource.setUpdatedAt(toInstant(row.getLocalDateTime("updated_at")));
+        resource.setResourceId(row.getString("resourceid"));
+        resource.setLicense(row.getString("license"));
+        resource.setTitle(row.getString("title"));
+        resource.setDescription(row.getString("description"));
+        resource.setPublisher(row.getString("publisher"));
+    }
+
+    private static Instant toInstant(LocalDateTime value) {
+        return value == null ? null : value.atZone(ZoneId.systemDefault()).toInstant();
+    }
+
+    private static Map<String, Set<String>> toAdditionalMetadata(Object value) {
+        if (value instanceof String) {
+            value = RowTransformer.decodeJson((String) value);
+        }
+        if (!(value instanceof JsonObject)) {
+            return null;
+        }
+        Map<String, Set<String>> metadata = new HashMap<>();
+        for (Map.Entry<String, Object> entry : (JsonObject) value) {
+            Set<String> values = new HashSet<>();
+            if (entry.getValue() instanceof JsonArray) {
+                for (Object element : (JsonArray) entry.getValue()) {
+                    values.add(element == null ? null : element.toString());
+                }
+            } else if (entry.getValue() != null) {
+                values.add(entry.getValue().toString());
+            }
+            metadata.put(entry.getKey(), values);
+        }
+        return metadata;
+    }
+}
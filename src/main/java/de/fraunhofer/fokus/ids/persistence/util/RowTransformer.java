@@ -8,14 +8,18 @@ import io.vertx.sqlclient.RowSet;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 /**
  * @author Vincent Bohlen, vincent.bohlen@fokus.fraunhofer.de
  */
 public class RowTransformer {
 
+    /**
+     * The JSONB columns of the schema (see InitService). Documents stored in them as JSON strings are returned as
+     * String by the client and decoded here, values of all other columns are used as they are.
+     */
+    static final Set<String> JSON_COLUMNS = new HashSet<>(Arrays.asList("data", "additionalmetadata", "client_profile"));
+
     public List<JsonObject> transform(RowSet<Row> rows) {
 
         List<JsonObject> list = new ArrayList<>();
@@ -31,12 +35,10 @@ public class RowTransformer {
                                 ZoneId.systemDefault()).toInstant());
                     } else if(value instanceof String[]) {
                         jsonObject.put(columnName, new JsonArray(Arrays.asList(row.getStringArray(i))));
+                    } else if(value instanceof String && JSON_COLUMNS.contains(columnName)) {
+                        jsonObject.put(columnName, decodeJson((String) value));
                     } else {
-                        try {
-                            jsonObject.put(columnName, new JsonObject(value.toString()));
-                        } catch (DecodeException e){
-                            jsonObject.put(columnName, row.getValue(i));
-                        }
+                        jsonObject.put(columnName, value);
                     }
                 }
             }
@@ -44,4 +46,16 @@ public class RowTransformer {
         }
         return list;
     }
+
+    static Object decodeJson(String value) {
+        String trimmed = value.trim();
+        if (trimmed.startsWith("{")) {
+            try {
+                return new JsonObject(trimmed);
+            } catch (DecodeException e) {
+                return value;
+            }
+        }
+        return value;
+    }
 }
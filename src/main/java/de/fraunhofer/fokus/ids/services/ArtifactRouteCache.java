@@ -0,0 +1,85 @@
+package de.fraunhofer.fokus.ids.services;
+
+import de.fraunhofer.fokus.ids.models.ArtifactRoute;
+import io.vertx.core.json.JsonObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM wide cache of the resolved artifact routes, keyed by distribution id.
+ * Every change of a distribution, dataset, data source or adapter has to call invalidate, entries additionally
+ * expire after TTL to pick up changes made by other connector instances on the same database.
+ */
+public class ArtifactRouteCache {
+
+    private static final ArtifactRouteCache INSTANCE = new ArtifactRouteCache();
+    private static final int MAX_ENTRIES = 10000;
+    private static final long TTL = 60 * 1000;
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final Map<Long, Route> routes = new LinkedHashMap<Long, Route>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Route> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private ArtifactRouteCache() {
+    }
+
+    public static ArtifactRouteCache getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized ArtifactRoute get(Long distributionId) {
+        Route route = routes.get(distributionId);
+        if (route != null && System.currentTimeMillis() < route.expiresAt) {
+            hits.incrementAndGet();
+            return route.route;
+        }
+        if (route != null) {
+            routes.remove(distributionId);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * The generation has to be read before the route is loaded, a route loaded before an invalidation is not cached.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public synchronized void put(Long distributionId, long loadedGeneration, ArtifactRoute route) {
+        if (loadedGeneration == generation.get()) {
+            routes.put(distributionId, new Route(route, System.currentTimeMillis() + TTL));
+        }
+    }
+
+    public synchronized void invalidate() {
+        generation.incrementAndGet();
+        routes.clear();
+    }
+
+    public synchronized JsonObject getMetrics() {
+        return new JsonObject()
+                .put("hits", hits.get())
+                .put("misses", misses.get())
+                .put("size", routes.size());
+    }
+
+    private static class Route {
+        private final ArtifactRoute route;
+        private final long expiresAt;
+
+        private Route(ArtifactRoute route, long expiresAt) {
+            this.route = route;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
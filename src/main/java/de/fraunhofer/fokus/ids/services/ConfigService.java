@@ -56,6 +56,7 @@ public class ConfigService {
             if (unsubReply.succeeded()) {
                 configManager.edit(params, editReply -> {
                     if (editReply.succeeded()) {
+                        SelfDescriptionCache.getInstance().invalidate();
                         brokerService.subscribeAll(subReply -> {
                             if (subReply.succeeded()) {
                                 JsonObject jO = new JsonObject();
@@ -85,7 +86,12 @@ public class ConfigService {
     }
 
     public void insert(Tuple params, Handler<AsyncResult<JsonObject>> resultHandler){
-        configManager.insert(params, r -> reply(r, resultHandler));
+        configManager.insert(params, r -> {
+            if (r.succeeded()) {
+                SelfDescriptionCache.getInstance().invalidate();
+            }
+            reply(r, resultHandler);
+        });
     }
 
     private void reply(AsyncResult reply, Handler<AsyncResult<JsonObject>> resultHandler){
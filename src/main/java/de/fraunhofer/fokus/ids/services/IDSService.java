@@ -1,24 +1,23 @@
 package de.fraunhofer.fokus.ids.services;
 
-import de.fraunhofer.fokus.ids.models.Constants;
+import de.fraunhofer.fokus.ids.models.MultipartMessage;
 import de.fraunhofer.fokus.ids.persistence.entities.Dataset;
 import de.fraunhofer.fokus.ids.persistence.entities.Distribution;
 import de.fraunhofer.fokus.ids.persistence.managers.DataAssetManager;
-import de.fraunhofer.fokus.ids.utils.services.authService.AuthAdapterService;
+import de.fraunhofer.fokus.ids.services.authAdapter.DatTokenCache;
+import de.fraunhofer.fokus.ids.services.datasourceAdapter.AdapterClient;
+import de.fraunhofer.fokus.ids.services.datasourceAdapter.AdapterResponse;
 import de.fraunhofer.iais.eis.*;
 import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
 import de.fraunhofer.iais.eis.util.TypedLiteral;
 import io.vertx.core.*;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import org.apache.http.HttpEntity;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.entity.mime.content.ContentBody;
-import org.apache.http.entity.mime.content.StringBody;
 import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
 
 import javax.xml.datatype.DatatypeConfigurationException;
@@ -28,7 +27,6 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.List;
 /**
@@ -40,15 +38,19 @@ public class IDSService {
 	private String INFO_MODEL_VERSION = "4.0.0";
 	private String[] SUPPORTED_INFO_MODEL_VERSIONS = {"4.0.0"};
 	private static final String CONNECTOR_VERSION = "2.0.0";
+	private static final String APPLICATION_JSON = "application/json; charset=UTF-8";
 	private DataAssetManager dataAssetManager;
 	private ConfigService configService;
     private Serializer serializer = new Serializer();
-	private AuthAdapterService authAdapterService;
+	private DatTokenCache datTokenCache;
+	private SelfDescriptionCache selfDescriptionCache = SelfDescriptionCache.getInstance();
+	private Vertx vertx;
 
 	public IDSService(Vertx vertx){
+		this.vertx = vertx;
 		dataAssetManager = new DataAssetManager(vertx);
 		configService = new ConfigService(vertx);
-		this.authAdapterService = AuthAdapterService.createProxy(vertx, Constants.AUTHADAPTER_SERVICE);
+		this.datTokenCache = DatTokenCache.getInstance(vertx);
 
 	}
 
@@ -153,15 +155,70 @@ public class IDSService {
 		});
 	}
 
-	public void getConnector(JsonObject config, Handler<AsyncResult<Connector>> resultHandler) {
-				buildBaseConnector(config, reply -> {
-					if (reply.succeeded()) {
-						resultHandler.handle(Future.succeededFuture(reply.result()));
-					} else {
-						LOGGER.error(reply.cause());
-						resultHandler.handle(Future.failedFuture(reply.cause()));
-					}
-				});
+	public void getConnectorJson(JsonObject config, Handler<AsyncResult<String>> resultHandler) {
+		getSelfDescription(config, reply -> {
+			if (reply.succeeded()) {
+				resultHandler.handle(Future.succeededFuture(reply.result().getJson()));
+			} else {
+				resultHandler.handle(Future.failedFuture(reply.cause()));
+			}
+		});
+	}
+
+	/**
+	 * Serializes a single element of the self-description, i.e. the connector, one DataResource or one Artifact.
+	 * Fails with a NoSuchElementException if the element is not offered.
+	 */
+	public void getElementJson(JsonObject config, URI element, Handler<AsyncResult<String>> resultHandler) {
+		getSelfDescription(config, reply -> {
+			if (reply.failed()) {
+				resultHandler.handle(Future.failedFuture(reply.cause()));
+				return;
+			}
+			if (element.equals(reply.result().getConnectorId())) {
+				resultHandler.handle(Future.succeededFuture(reply.result().getJson()));
+				return;
+			}
+			Object found = findOfferedElement(config, element);
+			if (found == null) {
+				resultHandler.handle(Future.failedFuture(new NoSuchElementException("Requested element " + element + " is not offered.")));
+				return;
+			}
+			try {
+				resultHandler.handle(Future.succeededFuture(serializer.serialize(found)));
+			} catch (IOException e) {
+				LOGGER.error(e);
+				resultHandler.handle(Future.failedFuture(e));
+			}
+		});
+	}
+
+	private Object findOfferedElement(JsonObject config, URI element) {
+		String elementId = element.toString();
+		String resourcePrefix = config.getString("url") + "/DataResource/";
+		if (elementId.startsWith(resourcePrefix)) {
+			try {
+				Resource resource = selfDescriptionCache.getOfferedResource(Long.parseLong(elementId.substring(resourcePrefix.length())));
+				return resource != null && element.equals(resource.getId()) ? resource : null;
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		if (elementId.startsWith(config.getString("url") + "/Artifact/")) {
+			return selfDescriptionCache.findArtifact(element);
+		}
+		return null;
+	}
+
+	public void getSelfDescription(JsonObject config, Handler<AsyncResult<SelfDescriptionCache.SelfDescription>> resultHandler) {
+		selfDescriptionCache.get(config, promise -> buildBaseConnector(config, promise), reply -> {
+			if (reply.succeeded()) {
+				resultHandler.handle(Future.succeededFuture(reply.result()));
+			} else {
+				LOGGER.error(reply.cause());
+				resultHandler.handle(Future.failedFuture(reply.cause()));
+			}
+		});
 	}
 
 	private DescriptionResponseMessage buildSelfDescriptionResponse(URI uri, JsonObject config, Handler<AsyncResult<Message>> resultHandler){
@@ -193,11 +250,14 @@ public class IDSService {
 
 	private void buildBaseConnector(JsonObject config, Handler<AsyncResult<Connector>> next){
 
-		findPublished(publishedDataAssets -> {
-			if(publishedDataAssets.succeeded()){
-				HashMap<Long, List<ConnectorEndpoint>> endpointMap = getResourceEndpoints(config, publishedDataAssets.result());
-				Future<ResourceCatalog> catalogFuture = buildCatalog(config, publishedDataAssets.result(), endpointMap);
+		updateOfferedResources(config, offeredResources -> {
+			if(offeredResources.succeeded()){
 				try {
+					// The offered resources are serialized separately, the cache puts them in place of the placeholder.
+					List<Resource> placeholder = new ArrayList<>(Arrays.asList(new DataResourceBuilder(
+							new URI(config.getString("url") + "/DataResource/" + SelfDescriptionCache.PLACEHOLDER)).build()));
+					Future<ResourceCatalog> catalogFuture = buildCatalog(config, placeholder);
+
 					BaseConnectorBuilder connectorBuilder = new BaseConnectorBuilder((new URI(config.getString("url") + "#Connector")))
 							._maintainer_(new URI(config.getString("maintainer")))
 							._version_(CONNECTOR_VERSION)
@@ -237,13 +297,62 @@ public class IDSService {
 					next.handle(Future.failedFuture(e.getMessage()));
 				}
 
+			} else {
+				next.handle(Future.failedFuture(offeredResources.cause()));
 			}
 		});
 	}
 
-	private Future<ResourceCatalog> buildCatalog(JsonObject config, List<Dataset> publishedDataAssets, Map<Long, List<ConnectorEndpoint>> endpointMap) {
+	/**
+	 * Brings the cached offered resources up to date. Only the datasets that changed since the last build are reloaded,
+	 * unless the cache requests a full rebuild.
+	 */
+	private void updateOfferedResources(JsonObject config, Handler<AsyncResult<Void>> next) {
+		Set<Long> changedDatasets = selfDescriptionCache.takeChangedDatasets(config.getString("url"));
+		if (changedDatasets != null && changedDatasets.isEmpty()) {
+			next.handle(Future.succeededFuture());
+			return;
+		}
+		Handler<AsyncResult<List<Dataset>>> datasetHandler = reply -> {
+			if (reply.succeeded()) {
+				try {
+					Map<Long, Resource> resources = createDataResources(config, reply.result());
+					selfDescriptionCache.updateOfferedResources(changedDatasets, resources, serializeResources(resources));
+					next.handle(Future.succeededFuture());
+				} catch (IOException e) {
+					LOGGER.error(e);
+					selfDescriptionCache.resetOfferedResources();
+					next.handle(Future.failedFuture(e));
+				}
+			} else {
+				LOGGER.error(reply.cause());
+				selfDescriptionCache.resetOfferedResources();
+				next.handle(Future.failedFuture(reply.cause()));
+			}
+		};
+		if (changedDatasets == null) {
+			dataAssetManager.findPublished(datasetHandler);
+		} else {
+			dataAssetManager.findPublishedByIds(new ArrayList<>(changedDatasets), datasetHandler);
+		}
+	}
 
-		Future<List<Resource>> offers = getOfferResources(config, publishedDataAssets, endpointMap);
+	/**
+	 * Serializes every resource on its own. The JSON-LD context is dropped, the resources are embedded in the connector.
+	 */
+	private Map<Long, String> serializeResources(Map<Long, Resource> resources) throws IOException {
+		Map<Long, String> resourceJson = new HashMap<>();
+		for (Map.Entry<Long, Resource> entry : resources.entrySet()) {
+			JsonObject json = new JsonObject(serializer.serialize(entry.getValue()));
+			json.remove("@context");
+			resourceJson.put(entry.getKey(), json.encode());
+		}
+		return resourceJson;
+	}
+
+	private Future<ResourceCatalog> buildCatalog(JsonObject config, List<Resource> offeredResources) {
+
+		Future<List<Resource>> offers = Future.succeededFuture(offeredResources);
 		Future<List<Resource>> requests = getRequestResources(config);
 		Promise<ResourceCatalog> catalog = Promise.promise();
 
@@ -272,14 +381,9 @@ public class IDSService {
 		return Future.succeededFuture(new ArrayList<>());
 	}
 
-	private Future<List<Resource>> getOfferResources(JsonObject config, List<Dataset> publishedDataAssets, Map<Long, List<ConnectorEndpoint>> endpointMap) {
-		Promise<List<Resource>> daPromise = Promise.promise();
-		createDataResources(config, publishedDataAssets, daPromise, endpointMap);
-		return daPromise.future();
-	}
-
-	private void createDataResources( JsonObject config, List<Dataset> daList, Promise<List<Resource>> daPromise, Map<Long, List<ConnectorEndpoint>> endpointMap) {
-			ArrayList<Resource> offerResources = new ArrayList<>();
+	private Map<Long, Resource> createDataResources(JsonObject config, List<Dataset> daList) {
+			Map<Long, List<ConnectorEndpoint>> endpointMap = getResourceEndpoints(config, daList);
+			Map<Long, Resource> offerResources = new HashMap<>();
 			for (Dataset da : daList) {
 				try {
 					DataResourceBuilder r = new DataResourceBuilder(new URI(config.getString("url") + "/DataResource/"+da.getId()))
@@ -347,31 +451,12 @@ public class IDSService {
 							it.remove();
 						}
 					}
-					offerResources.add(dr);
+					offerResources.put(da.getId(), dr);
 				} catch (Exception e) {
 					LOGGER.error( e);
 				}
 			}
-			daPromise.complete(offerResources);
-	}
-
-	private void findPublished(Handler<AsyncResult<List<Dataset>>> next) {
-
-		dataAssetManager.findPublished(reply -> {
-			if(reply.succeeded()) {
-
-				JsonArray array = new JsonArray(reply.result().toString());
-				List<Dataset> assets = new ArrayList<>();
-				for(int i=0;i<array.size();i++){
-					assets.add(Json.decodeValue(array.getJsonObject(i).toString(), Dataset.class));
-				}
-				next.handle(Future.succeededFuture(assets));
-			}
-			else{
-				LOGGER.error(reply.cause());
-				next.handle(Future.succeededFuture(new ArrayList<>()));
-			}
-		});
+			return offerResources;
 	}
 
 	private HashMap<Long, List<ConnectorEndpoint>> getResourceEndpoints(JsonObject config, List<Dataset> daList) {
@@ -380,7 +465,7 @@ public class IDSService {
 			List<ConnectorEndpoint> daEndpoints = new ArrayList<>();
 			for(Distribution dist : da.getDistributions()) {
 				try {
-					ConnectorEndpoint e = new ConnectorEndpointBuilder(new URI(config.getString("url") + "/ConnectorEndpoint/" + UUID.randomUUID()))
+					ConnectorEndpoint e = new ConnectorEndpointBuilder(new URI(config.getString("url") + "/ConnectorEndpoint/" + dist.getId()))
 							._endpointArtifact_(new ArtifactBuilder(new URI(config.getString("url") + "/Artifact/" + dist.getId()))
 									._creationDate_(getDate(dist.getCreatedAt()))
 									._fileName_(dist.getFilename())
@@ -414,22 +499,22 @@ public class IDSService {
 	private ArrayList<? extends ConnectorEndpoint> createStaticEndpoints(JsonObject config) {
 		ArrayList<ConnectorEndpoint> endpoints = new ArrayList<>();
 			try {
-				ConnectorEndpoint e = new ConnectorEndpointBuilder(new URI(config.getString("url") + "/ConnectorEndpoint/" + UUID.randomUUID()))
+				ConnectorEndpoint e = new ConnectorEndpointBuilder(new URI(config.getString("url") + "/ConnectorEndpoint/infrastructure"))
 						._accessURL_(new URI(config.getString("url") + "/infrastructure"))
 						._endpointInformation_(new ArrayList<>(Arrays.asList(new TypedLiteral("All IDS Multipart messages should be sent to this endpoint."))))
 						.build();
 				endpoints.add(e);
-				ConnectorEndpoint e2 = new ConnectorEndpointBuilder(new URI(config.getString("url") + "/ConnectorEndpoint/" + UUID.randomUUID()))
+				ConnectorEndpoint e2 = new ConnectorEndpointBuilder(new URI(config.getString("url") + "/ConnectorEndpoint/data"))
 						._accessURL_(new URI(config.getString("url") + "/data"))
 						._endpointInformation_(new ArrayList<>(Arrays.asList(new TypedLiteral("IDS ArtifactRequestMessages can be sent to this endpoint via POST request."))))
 						.build();
 				endpoints.add(e2);
-				ConnectorEndpoint e3 = new ConnectorEndpointBuilder(new URI(config.getString("url") + "/ConnectorEndpoint/" + UUID.randomUUID()))
+				ConnectorEndpoint e3 = new ConnectorEndpointBuilder(new URI(config.getString("url") + "/ConnectorEndpoint/description"))
 						._accessURL_(new URI(config.getString("url") + "/about"))
 						._endpointInformation_(new ArrayList<>(Arrays.asList(new TypedLiteral("IDS DescriptionRequestMessages can be sent to this endpoint via POST request."))))
 						.build();
 				endpoints.add(e3);
-				ConnectorEndpoint e4 = new ConnectorEndpointBuilder(new URI(config.getString("url") + "/ConnectorEndpoint/" + UUID.randomUUID()))
+				ConnectorEndpoint e4 = new ConnectorEndpointBuilder(new URI(config.getString("url") + "/ConnectorEndpoint/selfdescription"))
 						._accessURL_(new URI(config.getString("url") + "/about"))
 						._endpointInformation_(new ArrayList<>(Arrays.asList(new TypedLiteral("The Connector SelfDescription can be obtained from this endpoint via GET request."))))
 						.build();
@@ -491,62 +576,124 @@ public class IDSService {
 				});
 	}
 
-	public void handleDataMessage(URI uri, Future<Message> header, Future payload, long assetId, Handler<AsyncResult<HttpEntity>> resultHandler) {
-		CompositeFuture.all(header,payload).onComplete( reply -> {
+	/**
+	 * Waits for both header and payload, so that a payload file that arrives after a failed header is still deleted.
+	 */
+	public void handleDataMessage(URI uri, Future<Message> header, Future payload, long assetId, Handler<AsyncResult<MultipartMessage>> resultHandler) {
+		CompositeFuture.join(header,payload).onComplete( reply -> {
 			if(reply.succeeded()) {
-				String message = null;
-
+				File payloadFile = (File) payload.result();
+				String message;
 				try {
 					message = serializer.serialize(header.result());
 				} catch (IOException e) {
 					LOGGER.error(e);
+					deletePayload(payloadFile);
 					handleRejectionMessage(uri, RejectionReason.INTERNAL_RECIPIENT_ERROR, resultHandler);
+					return;
 				}
-				final String finalMessage = message;
 				getFileName(assetId, fileNameReply -> {
-					if(fileNameReply.succeeded()) {
-						MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create()
-								.setCharset(StandardCharsets.UTF_8)
-								.setContentType(ContentType.MULTIPART_FORM_DATA)
-								.addPart("header", new StringBody(finalMessage, ContentType.create("application/json", StandardCharsets.UTF_8)))
-								.addBinaryBody("payload", (File) payload.result(), ContentType.create("application/octet-stream"), fileNameReply.result());
-						resultHandler.handle(Future.succeededFuture(multipartEntityBuilder.build()));
-						((File) payload.result()).delete();
-					} else {
-						MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create()
-								.setCharset(StandardCharsets.UTF_8)
-								.setContentType(ContentType.MULTIPART_FORM_DATA)
-								.addPart("header", new StringBody(finalMessage, ContentType.create("application/json", StandardCharsets.UTF_8)))
-								.addBinaryBody("payload", (File) payload.result(), ContentType.create("application/octet-stream"), UUID.randomUUID().toString());
-						resultHandler.handle(Future.succeededFuture(multipartEntityBuilder.build()));
-						((File) payload.result()).delete();
-					}
+					String fileName = fileNameReply.succeeded() ? fileNameReply.result() : UUID.randomUUID().toString();
+					vertx.fileSystem().open(payloadFile.getPath(), new OpenOptions().setRead(true).setWrite(false), fileReply -> {
+						if (fileReply.succeeded()) {
+							AsyncFile asyncFile = fileReply.result();
+							MultipartMessage multipartMessage = new MultipartMessage()
+									.addPart("header", message, APPLICATION_JSON)
+									.addPart("payload", fileName, asyncFile, "application/octet-stream")
+									.cleanupHandler(written -> asyncFile.close(closeReply -> deletePayload(payloadFile)));
+							resultHandler.handle(Future.succeededFuture(multipartMessage));
+						} else {
+							LOGGER.error(fileReply.cause());
+							deletePayload(payloadFile);
+							handleRejectionMessage(uri, RejectionReason.INTERNAL_RECIPIENT_ERROR, resultHandler);
+						}
+					});
 				});
 			}else{
-				handleRejectionMessage(uri,RejectionReason.INTERNAL_RECIPIENT_ERROR,resultHandler);
+				if (payload.succeeded()) {
+					deletePayload((File) payload.result());
+				}
+				handleRejectionMessage(uri,payloadRejectionReason(payload),resultHandler);
 				LOGGER.error(reply.cause());
 				}
 			});
 	}
 
-	public void handleAboutMessage(URI uri, Future<Message> header, Future<Connector> payload, Handler<AsyncResult<HttpEntity>> resultHandler) {
+	/**
+	 * Pass-through variant of handleDataMessage: the paused adapter response becomes the payload part
+	 * and is piped to the client as it arrives. Both futures are joined, so that an adapter response that arrives
+	 * after a failed header is still reset and its connection released.
+	 */
+	public void handleDataStreamMessage(URI uri, Future<Message> header, Future<AdapterResponse> payload, long assetId, Handler<AsyncResult<MultipartMessage>> resultHandler) {
+		CompositeFuture.join(header, payload).onComplete( reply -> {
+			if(reply.succeeded()) {
+				AdapterResponse adapterResponse = payload.result();
+				String message;
+				try {
+					message = serializer.serialize(header.result());
+				} catch (IOException e) {
+					LOGGER.error(e);
+					adapterResponse.reset();
+					handleRejectionMessage(uri, RejectionReason.INTERNAL_RECIPIENT_ERROR, resultHandler);
+					return;
+				}
+				getFileName(assetId, fileNameReply -> {
+					String fileName = fileNameReply.succeeded() ? fileNameReply.result() : UUID.randomUUID().toString();
+					MultipartMessage multipartMessage = new MultipartMessage()
+							.addPart("header", message, APPLICATION_JSON)
+							.addPart("payload", fileName, adapterResponse, "application/octet-stream")
+							.cleanupHandler(written -> {
+								if (!written) {
+									adapterResponse.reset();
+								}
+							});
+					resultHandler.handle(Future.succeededFuture(multipartMessage));
+				});
+			} else {
+				if (payload.succeeded()) {
+					payload.result().reset();
+				}
+				handleRejectionMessage(uri, payloadRejectionReason(payload), resultHandler);
+				LOGGER.error(reply.cause());
+			}
+		});
+	}
+
+	/**
+	 * Payloads of adapters that are rejected by their circuit breaker or bulkhead are answered as temporarily not available.
+	 */
+	private RejectionReason payloadRejectionReason(Future<?> payload) {
+		return payload.failed() && AdapterClient.isUnavailable(payload.cause())
+				? RejectionReason.TEMPORARILY_NOT_AVAILABLE : RejectionReason.INTERNAL_RECIPIENT_ERROR;
+	}
+
+	private void deletePayload(File payloadFile) {
+		vertx.fileSystem().delete(payloadFile.getPath(), deleteReply -> {
+			if (deleteReply.failed()) {
+				LOGGER.error("Payload file " + payloadFile.getPath() + " could not be deleted.", deleteReply.cause());
+			}
+		});
+	}
+
+	public void handleAboutMessage(URI uri, Future<Message> header, Future<String> payload, Handler<AsyncResult<MultipartMessage>> resultHandler) {
 		CompositeFuture.all(header, payload).onComplete( reply -> {
 			if (reply.succeeded()) {
 
                 try {
 					String message = serializer.serialize(header.result());
-					String connector = serializer.serialize(payload.result());
-
-					MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create()
-							.setCharset(StandardCharsets.UTF_8)
-							.setContentType(ContentType.MULTIPART_FORM_DATA)
-							.addPart("header", new StringBody(message, ContentType.create("application/json", StandardCharsets.UTF_8)))
-							.addPart("payload", new StringBody(connector, ContentType.create("application/json", StandardCharsets.UTF_8)));
-					resultHandler.handle(Future.succeededFuture(multipartEntityBuilder.build()));
+					String connector = payload.result();
+
+					MultipartMessage multipartMessage = new MultipartMessage()
+							.addPart("header", message, APPLICATION_JSON)
+							.addPart("payload", connector, APPLICATION_JSON);
+					resultHandler.handle(Future.succeededFuture(multipartMessage));
 				} catch (IOException e) {
 					LOGGER.error(e);
 					handleRejectionMessage(uri, RejectionReason.INTERNAL_RECIPIENT_ERROR, resultHandler);
 				}
+			} else if (payload.failed() && payload.cause() instanceof NoSuchElementException) {
+				LOGGER.info(payload.cause().getMessage());
+				handleRejectionMessage(uri, RejectionReason.NOT_FOUND, resultHandler);
 			} else {
 				handleRejectionMessage(uri, RejectionReason.INTERNAL_RECIPIENT_ERROR, resultHandler);
 				LOGGER.error(reply.cause());
@@ -557,8 +704,7 @@ public class IDSService {
 	public void getFileName(Long id, Handler<AsyncResult<String>> result){
 		dataAssetManager.findDistributionById(id,jsonObjectAsyncResult -> {
 			if (jsonObjectAsyncResult.succeeded()){
-				Distribution dataAsset = Json.decodeValue(jsonObjectAsyncResult.result().toString(), Distribution.class);
-				result.handle(Future.succeededFuture(dataAsset.getFilename()));
+				result.handle(Future.succeededFuture(jsonObjectAsyncResult.result().getFilename()));
 			}
 			else {
 				LOGGER.error(jsonObjectAsyncResult.cause());
@@ -567,13 +713,17 @@ public class IDSService {
 		});
 	}
 
-	public void handleRejectionMessage(URI uri,RejectionReason rejectionReason,Handler<AsyncResult<HttpEntity>> resultHandler) {
+	public void handleRejectionMessage(URI uri,RejectionReason rejectionReason,Handler<AsyncResult<MultipartMessage>> resultHandler) {
 		configService.getConfiguration(configReply -> {
 			if(configReply.succeeded()) {
 				createRejectionMessage(configReply.result(),uri, rejectionReason, rejectionMessageAsyncResult -> {
 					if (rejectionMessageAsyncResult.succeeded()) {
-						HttpEntity reject = createMultipartMessage(rejectionMessageAsyncResult.result());
-						resultHandler.handle(Future.succeededFuture(reject));
+						try {
+							resultHandler.handle(Future.succeededFuture(createMultipartMessage(rejectionMessageAsyncResult.result())));
+						} catch (IOException e) {
+							LOGGER.error(e);
+							resultHandler.handle(Future.failedFuture(e));
+						}
 					} else {
 						resultHandler.handle(Future.failedFuture(rejectionMessageAsyncResult.cause()));
 					}
@@ -585,23 +735,11 @@ public class IDSService {
 		});
 	}
 
-	private HttpEntity createMultipartMessage(Message message) {
-		ContentBody cb = null;
-		try {
-			cb = new StringBody(serializer.serialize(message), ContentType.create("application/json", StandardCharsets.UTF_8));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create()
-				.setCharset(StandardCharsets.UTF_8)
-				.setContentType(ContentType.MULTIPART_FORM_DATA)
-				.addPart("header", cb);
-
-			return multipartEntityBuilder.build();
+	private MultipartMessage createMultipartMessage(Message message) throws IOException {
+		return new MultipartMessage().addPart("header", serializer.serialize(message), APPLICATION_JSON);
 	}
 
 	private void getJWT(Handler<AsyncResult<String>> resultHandler){
-		authAdapterService.retrieveToken(tokenReply -> resultHandler.handle(tokenReply));
+		datTokenCache.getToken(resultHandler);
 	}
 }
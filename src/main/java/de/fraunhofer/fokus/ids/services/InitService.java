@@ -3,9 +3,6 @@ package de.fraunhofer.fokus.ids.services;
 import de.fraunhofer.fokus.ids.main.ApplicationConfig;
 import de.fraunhofer.fokus.ids.persistence.util.DatabaseConnector;
 import de.fraunhofer.fokus.ids.services.database.DatabaseService;
-import io.vertx.config.ConfigRetriever;
-import io.vertx.config.ConfigRetrieverOptions;
-import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.*;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
@@ -14,8 +11,9 @@ import io.vertx.core.logging.LoggerFactory;
 import io.vertx.sqlclient.Tuple;
 import org.mindrot.jbcrypt.BCrypt;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * @author Vincent Bohlen, vincent.bohlen@fokus.fraunhofer.de
@@ -157,15 +155,48 @@ public class InitService{
 			.put("primary_key", "imageid");
 	
 	
+	private static final String CREATE_SCHEMA_VERSION_TABLE = "CREATE TABLE IF NOT EXISTS schema_version (version INTEGER PRIMARY KEY, description TEXT, applied_at TIMESTAMP)";
+	private static final String FIND_SCHEMA_VERSIONS_QUERY = "SELECT version FROM schema_version";
+	private static final String INSERT_SCHEMA_VERSION = "INSERT INTO schema_version (version, description, applied_at) VALUES ($1, $2, NOW())";
+	private static final String COUNT_TABLES_QUERY = "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = 'public' AND table_name = ANY($1)";
+
+	/**
+	 * Indexes of the hot lookups: keyset pages by id per status and data source, tag filter, resource id,
+	 * the batched distribution lookup, adapter by name and broker by status.
+	 */
+	private final List<String> indexes = Arrays.asList(
+			"CREATE INDEX IF NOT EXISTS dataset_status_id_idx ON dataset (status, id DESC)",
+			"CREATE INDEX IF NOT EXISTS dataset_sourceid_id_idx ON dataset (sourceid, id DESC)",
+			"CREATE INDEX IF NOT EXISTS dataset_tags_idx ON dataset USING GIN (tags)",
+			"CREATE INDEX IF NOT EXISTS dataset_resourceid_idx ON dataset (resourceid)",
+			"CREATE INDEX IF NOT EXISTS distribution_datasetid_idx ON distribution (datasetid)",
+			"CREATE INDEX IF NOT EXISTS adapters_name_idx ON adapters (name)",
+			"CREATE INDEX IF NOT EXISTS broker_status_idx ON broker (status)");
+
+	/**
+	 * Ordered schema migrations. Applied versions are recorded in schema_version and skipped on the next start,
+	 * so new schema changes have to be added as a new version instead of changing an existing one.
+	 */
+	private final List<Migration> migrations = Arrays.asList(
+			new Migration(1, "Initial tables", this::initTables),
+			new Migration(2, "Indexes", () -> runStatements(indexes)),
+			new Migration(3, "Adapter client profiles", () -> runStatements(Collections.singletonList(
+					"ALTER TABLE adapters ADD COLUMN IF NOT EXISTS client_profile JSONB"))),
+			new Migration(4, "Adapter instances", () -> runStatements(Arrays.asList(
+					"CREATE TABLE IF NOT EXISTS adapter_instances (id SERIAL PRIMARY KEY, created_at TIMESTAMP, updated_at TIMESTAMP, " +
+							"name TEXT NOT NULL, host TEXT NOT NULL, port INTEGER NOT NULL, UNIQUE (name, host, port))",
+					"INSERT INTO adapter_instances (created_at, updated_at, name, host, port) " +
+							"SELECT NOW(), NOW(), name, host, port FROM adapters WHERE host IS NOT NULL AND port IS NOT NULL ON CONFLICT DO NOTHING"))));
+
 	public InitService(Vertx vertx){
 		this.vertx = vertx;
 	}
 
-	public void initDatabase(Handler<AsyncResult<Void>> resultHandler){
+	public void initDatabase(JsonObject config, Handler<AsyncResult<Void>> resultHandler){
 
-		initTables(reply -> {
+		migrate(reply -> {
 			if(reply.succeeded()){
-				createAdminUser(reply2 -> {
+				createAdminUser(config, reply2 -> {
 					if (reply2.succeeded()) {
 						resultHandler.handle(Future.succeededFuture());
 					}
@@ -174,11 +205,61 @@ public class InitService{
 						resultHandler.handle(Future.failedFuture(reply2.cause()));
 					}
 				});
+			} else {
+				LOGGER.error("Schema migration failed.", reply.cause());
+				resultHandler.handle(Future.failedFuture(reply.cause()));
+			}
+		});
+	}
 
+	private void migrate(Handler<AsyncResult<Void>> resultHandler){
+		DatabaseConnector.getInstance().update(CREATE_SCHEMA_VERSION_TABLE, reply -> {
+			if (reply.failed()) {
+				resultHandler.handle(Future.failedFuture(reply.cause()));
+				return;
 			}
+			DatabaseConnector.getInstance().query(FIND_SCHEMA_VERSIONS_QUERY, Tuple.tuple(), row -> row.getInteger("version"), versions -> {
+				if (versions.failed()) {
+					resultHandler.handle(Future.failedFuture(versions.cause()));
+					return;
+				}
+				Set<Integer> applied = new HashSet<>(versions.result());
+				Future<Void> migration = Future.succeededFuture();
+				for (Migration m : migrations) {
+					if (!applied.contains(m.version)) {
+						migration = migration.compose(v -> apply(m));
+					}
+				}
+				if (applied.containsAll(migrations.stream().map(m -> m.version).collect(Collectors.toList()))) {
+					LOGGER.info("Database schema is up to date.");
+				}
+				migration.onComplete(resultHandler);
+			});
 		});
 	}
 
+	private Future<Void> apply(Migration migration){
+		LOGGER.info("Applying schema migration " + migration.version + ": " + migration.description);
+		return migration.action.get().compose(v -> {
+			Promise<List<JsonObject>> versionPromise = Promise.promise();
+			DatabaseConnector.getInstance().query(INSERT_SCHEMA_VERSION,
+					Tuple.of(migration.version, migration.description), versionPromise);
+			return versionPromise.future().<Void>mapEmpty();
+		});
+	}
+
+	private Future<Void> runStatements(List<String> statements){
+		Future<Void> result = Future.succeededFuture();
+		for (String statement : statements) {
+			result = result.compose(v -> {
+				Promise<Void> promise = Promise.promise();
+				DatabaseConnector.getInstance().update(statement, promise);
+				return promise.future();
+			});
+		}
+		return result;
+	}
+
 	private Future<List<JsonObject>> performUpdate(JsonObject query,String tablename){
 		Promise<List<JsonObject>> queryPromise = Promise.promise();
 		Future<List<JsonObject>> queryFuture = queryPromise.future();
@@ -193,73 +274,82 @@ public class InitService{
 		return queryFuture;
 	}
 
-	private void initTables(Handler<AsyncResult<Void>> resultHandler){
-
-		ArrayList<Future> list = new ArrayList<Future>() {{
-            performUpdate(user,"public.user");
-            performUpdate(dataset,"dataset");
-			performUpdate(distribution,"distribution");
-			performUpdate(datasource,"datasource");
-            performUpdate(broker,"broker");
-            performUpdate(job,"job");
-            performUpdate(configuration,"configuration");
-            //add Adapters from config manager
-            
-            performUpdate(adapters,"adapters");
-            //add containers and images from service docker 
-            performUpdate(containers,"containers");
-            performUpdate(images,"images");
+	/**
+	 * Creates or reconciles the tables and their foreign keys. Single steps fail on existing databases,
+	 * e.g. when a primary key already exists, so they are only logged and the migration succeeds once all tables exist.
+	 */
+	private Future<Void> initTables(){
+
+		List<Future> tables = Arrays.asList(
+				tolerate(performUpdate(user,"public.user")),
+				tolerate(performUpdate(dataset,"dataset")),
+				tolerate(performUpdate(distribution,"distribution")),
+				tolerate(performUpdate(datasource,"datasource")),
+				tolerate(performUpdate(broker,"broker")),
+				tolerate(performUpdate(job,"job")),
+				tolerate(performUpdate(configuration,"configuration")),
+				//add Adapters from config manager
+				tolerate(performUpdate(adapters,"adapters")),
+				//add containers and images from service docker
+				tolerate(performUpdate(containers,"containers")),
+				tolerate(performUpdate(images,"images")));
 
+		return CompositeFuture.all(tables).compose(created -> {
 			//#Set_all_Foreign_keys
-			//setForeignKeys("distribution", distribution);
-			setForeignKeys("dataset", dataset);
-			setForeignKeys("distribution", distribution);
-			setForeignKeys("job", job);
-			setForeignKeys("containers", containers);
-		}};
+			List<Future> foreignKeys = Arrays.asList(
+					tolerate(setForeignKeys("dataset", dataset)),
+					tolerate(setForeignKeys("distribution", distribution)),
+					tolerate(setForeignKeys("job", job)),
+					tolerate(setForeignKeys("containers", containers)));
+			return CompositeFuture.all(foreignKeys);
+		}).compose(keys -> {
+			String[] tableNames = {"user", "dataset", "distribution", "datasource", "broker", "job", "configuration", "adapters", "containers", "images"};
+			Promise<List<JsonObject>> countPromise = Promise.promise();
+			DatabaseConnector.getInstance().query(COUNT_TABLES_QUERY, Tuple.tuple().addStringArray(tableNames), countPromise);
+			return countPromise.future().compose(count -> {
+				if (count.get(0).getLong("count") < tableNames.length) {
+					return Future.<Void>failedFuture("Tables creation failed.");
+				}
+				LOGGER.info("Tables creation finished.");
+				return Future.<Void>succeededFuture();
+			});
+		});
+	}
 
-		CompositeFuture.all(list).onComplete( reply -> {
-			if(reply.succeeded()) {
+	private Future<List<JsonObject>> tolerate(Future<List<JsonObject>> step){
+		return step.recover(cause -> {
+			LOGGER.info("Schema step failed: " + cause.getMessage());
+			return Future.<List<JsonObject>>succeededFuture(new ArrayList<>());
+		});
+	}
 
-				LOGGER.info("Tables creation finished.");
+	private void createAdminUser(JsonObject config, Handler<AsyncResult<Void>> resultHandler){
+
+		JsonObject frontendConfig = config.getJsonObject(ApplicationConfig.ENV_FRONTEND_CONFIG, ApplicationConfig.DEFAULT_FRONTEND_CONFIG);
+		DatabaseConnector.getInstance().query(ADMIN_CREATE_QUERY, Tuple.tuple()
+				.addString(frontendConfig.getString("username"))
+				.addString(BCrypt.hashpw(frontendConfig.getString("password"), BCrypt.gensalt()))
+				, reply -> {
+			if (reply.succeeded()) {
+				LOGGER.info("Adminuser created.");
 				resultHandler.handle(Future.succeededFuture());
-			}
-			else{
-				LOGGER.error("Tables creation failed", reply.cause());
+			} else {
+				LOGGER.error("Adminuser creation failed.", reply.cause());
 				resultHandler.handle(Future.failedFuture(reply.cause()));
 			}
 		});
 	}
 
-	private void createAdminUser(Handler<AsyncResult<Void>> resultHandler){
-
-		// ConfigStoreOptions confStore = new ConfigStoreOptions()
-		// 		.setType("env");
-
-		// ConfigRetrieverOptions options = new ConfigRetrieverOptions().addStore(confStore);
-
-		ConfigRetriever retriever = ConfigRetriever.create(vertx);
+	private static class Migration {
+		private final int version;
+		private final String description;
+		private final Supplier<Future<Void>> action;
 
-		retriever.getConfig(ar -> {
-			if (ar.succeeded()) {
-				DatabaseConnector.getInstance().query(ADMIN_CREATE_QUERY, Tuple.tuple()
-						.addString(ar.result().getJsonObject(ApplicationConfig.ENV_FRONTEND_CONFIG, ApplicationConfig.DEFAULT_FRONTEND_CONFIG).getString("username"))
-						.addString(BCrypt.hashpw(ar.result().getJsonObject(ApplicationConfig.ENV_FRONTEND_CONFIG, ApplicationConfig.DEFAULT_FRONTEND_CONFIG).getString("password"), BCrypt.gensalt()))
-						, reply -> {
-					if (reply.succeeded()) {
-						LOGGER.info("Adminuser created.");
-						resultHandler.handle(Future.succeededFuture());
-					} else {
-						LOGGER.error("Adminuser creation failed.", reply.cause());
-						resultHandler.handle(Future.failedFuture(reply.cause()));
-					}
-				});
-			}
-			else{
-				LOGGER.error("ConfigRetriever failed.", ar.cause());
-				resultHandler.handle(Future.failedFuture(ar.cause()));
-			}
-		});
+		private Migration(int version, String description, Supplier<Future<Void>> action) {
+			this.version = version;
+			this.description = description;
+			this.action = action;
+		}
 	}
-	
+
 }
@@ -0,0 +1,334 @@
+package de.fraunhofer.fokus.ids.services;
+
+import de.fraunhofer.iais.eis.Artifact;
+import de.fraunhofer.iais.eis.Connector;
+import de.fraunhofer.iais.eis.ConnectorEndpoint;
+import de.fraunhofer.iais.eis.Resource;
+import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
+import io.vertx.core.*;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.WriteStream;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM wide cache of the connector self-description and its serialized JSON-LD.
+ * The cached description is rebuilt on the next request after invalidate() was called or the configuration changed.
+ * Concurrent requests for a missing description share a single build.
+ * The offered resources are kept per dataset, together with their serialized JSON-LD, so that a rebuild only has to
+ * reload and reserialize the datasets that changed. The connector itself is serialized as an envelope around them.
+ */
+public class SelfDescriptionCache {
+
+    /**
+     * Id suffix of the resource that marks the position of the offered resources in the connector envelope.
+     */
+    public static final String PLACEHOLDER = "offered-resources-placeholder";
+
+    private static final SelfDescriptionCache INSTANCE = new SelfDescriptionCache();
+    private static final String MARKER = "__OFFERED_RESOURCES__";
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Logger LOGGER = LoggerFactory.getLogger(SelfDescriptionCache.class.getName());
+    private final AtomicLong generation = new AtomicLong();
+    private final List<Waiter> waiters = new ArrayList<>();
+    private final Map<Long, Resource> offeredResources = new ConcurrentSkipListMap<>();
+    private final Map<Long, String> offeredResourceJson = new ConcurrentSkipListMap<>();
+    private final Set<Long> changedDatasets = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuildAll = true;
+    private volatile String catalogUrl;
+    private volatile SelfDescription current;
+    private boolean building;
+
+    private SelfDescriptionCache() {
+    }
+
+    public static SelfDescriptionCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Marks the cached description including all offered resources as outdated.
+     */
+    public void invalidate() {
+        rebuildAll = true;
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Marks a single dataset as changed. Has to be called after every change of a dataset or its distributions.
+     */
+    public void invalidate(Long datasetId) {
+        changedDatasets.add(datasetId);
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Returns the ids of the datasets that changed since the last call, or null if all offered resources have to be rebuilt.
+     */
+    public Set<Long> takeChangedDatasets(String url) {
+        Set<Long> changed = new HashSet<>(changedDatasets);
+        changedDatasets.removeAll(changed);
+        if (rebuildAll || !Objects.equals(url, catalogUrl)) {
+            rebuildAll = false;
+            catalogUrl = url;
+            return null;
+        }
+        return changed;
+    }
+
+    /**
+     * Replaces the resources of the given datasets. Datasets without a resource are no longer offered.
+     * Passing null as datasetIds replaces all offered resources.
+     */
+    public void updateOfferedResources(Set<Long> datasetIds, Map<Long, Resource> resources, Map<Long, String> resourceJson) {
+        if (datasetIds == null) {
+            offeredResources.keySet().retainAll(resources.keySet());
+            offeredResourceJson.keySet().retainAll(resources.keySet());
+        } else {
+            for (Long datasetId : datasetIds) {
+                if (!resources.containsKey(datasetId)) {
+                    offeredResources.remove(datasetId);
+                    offeredResourceJson.remove(datasetId);
+                }
+            }
+        }
+        offeredResources.putAll(resources);
+        offeredResourceJson.putAll(resourceJson);
+    }
+
+    /**
+     * Forces a full rebuild of the offered resources, e.g. after an incremental update failed.
+     */
+    public void resetOfferedResources() {
+        rebuildAll = true;
+    }
+
+    public Resource getOfferedResource(Long datasetId) {
+        return offeredResources.get(datasetId);
+    }
+
+    public Artifact findArtifact(URI artifactId) {
+        for (Resource resource : offeredResources.values()) {
+            for (ConnectorEndpoint endpoint : resource.getResourceEndpoint()) {
+                Artifact artifact = endpoint.getEndpointArtifact();
+                if (artifact != null && artifactId.equals(artifact.getId())) {
+                    return artifact;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The builder has to complete the promise with the connector envelope, whose catalog offers only the placeholder
+     * resource with the id url + "/DataResource/" + PLACEHOLDER.
+     */
+    public void get(JsonObject config, Handler<Promise<Connector>> builder, Handler<AsyncResult<SelfDescription>> resultHandler) {
+        long requestedGeneration = generation.get();
+        SelfDescription cached = current;
+        if (cached != null && cached.generation >= requestedGeneration && cached.config.equals(config)) {
+            resultHandler.handle(Future.succeededFuture(cached));
+            return;
+        }
+        boolean startBuild;
+        synchronized (this) {
+            waiters.add(new Waiter(Vertx.currentContext(), config, requestedGeneration, builder, resultHandler));
+            startBuild = !building;
+            building = true;
+        }
+        if (startBuild) {
+            build(config.copy(), builder);
+        }
+    }
+
+    private void build(JsonObject config, Handler<Promise<Connector>> builder) {
+        long buildGeneration = generation.get();
+        Promise<Connector> connectorPromise = Promise.promise();
+        connectorPromise.future().onComplete(ar -> {
+            AsyncResult<SelfDescription> result;
+            if (ar.succeeded()) {
+                try {
+                    SelfDescription selfDescription = createSelfDescription(ar.result(), config, buildGeneration);
+                    if (generation.get() == buildGeneration) {
+                        current = selfDescription;
+                    }
+                    result = Future.succeededFuture(selfDescription);
+                } catch (Exception e) {
+                    LOGGER.error(e);
+                    result = Future.failedFuture(e);
+                }
+            } else {
+                result = Future.failedFuture(ar.cause());
+            }
+            List<Waiter> finished;
+            synchronized (this) {
+                finished = new ArrayList<>(waiters);
+                waiters.clear();
+                building = false;
+            }
+            for (Waiter waiter : finished) {
+                if (result.succeeded() && (!waiter.config.equals(config) || waiter.generation > buildGeneration)) {
+                    // The build started before the waiter's change, build again for it.
+                    waiter.dispatch(v -> get(waiter.config, waiter.builder, waiter.resultHandler));
+                } else {
+                    AsyncResult<SelfDescription> waiterResult = result;
+                    waiter.dispatch(v -> waiter.resultHandler.handle(waiterResult));
+                }
+            }
+        });
+        builder.handle(connectorPromise);
+    }
+
+    private SelfDescription createSelfDescription(Connector envelope, JsonObject config, long buildGeneration) throws IOException {
+        JsonObject json = new JsonObject(new Serializer().serialize(envelope));
+        if (!replacePlaceholder(json, config.getString("url") + "/DataResource/" + PLACEHOLDER)) {
+            throw new IllegalStateException("Offered resources placeholder not found in the connector envelope.");
+        }
+        String encoded = json.encode();
+        int markerIndex = encoded.indexOf("\"" + MARKER + "\"");
+        return new SelfDescription(envelope.getId(),
+                encoded.substring(0, markerIndex) + "[",
+                "]" + encoded.substring(markerIndex + MARKER.length() + 2),
+                new ArrayList<>(offeredResourceJson.values()), config, buildGeneration);
+    }
+
+    private boolean replacePlaceholder(JsonObject node, String placeholderId) {
+        for (String key : node.fieldNames()) {
+            Object value = node.getValue(key);
+            if (isPlaceholder(value, placeholderId)) {
+                node.put(key, MARKER);
+                return true;
+            }
+            if (value instanceof JsonObject && replacePlaceholder((JsonObject) value, placeholderId)) {
+                return true;
+            }
+            if (value instanceof JsonArray) {
+                for (Object element : (JsonArray) value) {
+                    if (element instanceof JsonObject && replacePlaceholder((JsonObject) element, placeholderId)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isPlaceholder(Object value, String placeholderId) {
+        if (value instanceof JsonObject) {
+            return placeholderId.equals(((JsonObject) value).getString("@id"));
+        }
+        if (value instanceof JsonArray && ((JsonArray) value).size() == 1) {
+            return isPlaceholder(((JsonArray) value).getValue(0), placeholderId);
+        }
+        return false;
+    }
+
+    /**
+     * The serialized connector, split into the envelope and one JSON-LD fragment per offered resource.
+     */
+    public static class SelfDescription {
+        private final URI connectorId;
+        private final String prefix;
+        private final String suffix;
+        private final List<String> resources;
+        private final JsonObject config;
+        private final long generation;
+
+        private SelfDescription(URI connectorId, String prefix, String suffix, List<String> resources, JsonObject config, long generation) {
+            this.connectorId = connectorId;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.resources = resources;
+            this.config = config;
+            this.generation = generation;
+        }
+
+        public URI getConnectorId() {
+            return connectorId;
+        }
+
+        public int getResourceCount() {
+            return resources.size();
+        }
+
+        public String getJson() {
+            StringBuilder json = new StringBuilder(prefix);
+            for (int i = 0; i < resources.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(resources.get(i));
+            }
+            return json.append(suffix).toString();
+        }
+
+        /**
+         * Writes the connector with the offered resources [offset, offset + limit) to the stream, in chunks and
+         * respecting its write queue. The stream is not ended.
+         */
+        public void writeTo(WriteStream<Buffer> writeStream, int offset, int limit, Handler<AsyncResult<Void>> resultHandler) {
+            int from = Math.min(Math.max(offset, 0), resources.size());
+            int to = (int) Math.min((long) from + Math.max(limit, 0), resources.size());
+            writeStream.write(Buffer.buffer(prefix));
+            writeResources(writeStream, from, from, to, resultHandler);
+        }
+
+        private void writeResources(WriteStream<Buffer> writeStream, int first, int next, int to, Handler<AsyncResult<Void>> resultHandler) {
+            int index = next;
+            while (index < to) {
+                Buffer chunk = Buffer.buffer(CHUNK_SIZE);
+                while (index < to && chunk.length() < CHUNK_SIZE) {
+                    if (index > first) {
+                        chunk.appendString(",");
+                    }
+                    chunk.appendString(resources.get(index++));
+                }
+                writeStream.write(chunk);
+                if (writeStream.writeQueueFull()) {
+                    int resume = index;
+                    writeStream.drainHandler(v -> {
+                        writeStream.drainHandler(null);
+                        writeResources(writeStream, first, resume, to, resultHandler);
+                    });
+                    return;
+                }
+            }
+            writeStream.write(Buffer.buffer(suffix), resultHandler);
+        }
+    }
+
+    private static class Waiter {
+        private final Context context;
+        private final JsonObject config;
+        private final long generation;
+        private final Handler<Promise<Connector>> builder;
+        private final Handler<AsyncResult<SelfDescription>> resultHandler;
+
+        private Waiter(Context context, JsonObject config, long generation, Handler<Promise<Connector>> builder,
+                       Handler<AsyncResult<SelfDescription>> resultHandler) {
+            this.context = context;
+            this.config = config;
+            this.generation = generation;
+            this.builder = builder;
+            this.resultHandler = resultHandler;
+        }
+
+        private void dispatch(Handler<Void> action) {
+            if (context == null || context == Vertx.currentContext()) {
+                action.handle(null);
+            } else {
+                context.runOnContext(action);
+            }
+        }
+    }
+}
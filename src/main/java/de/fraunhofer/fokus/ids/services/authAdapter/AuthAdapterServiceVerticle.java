@@ -3,9 +3,6 @@ package de.fraunhofer.fokus.ids.services.authAdapter;
 import de.fraunhofer.fokus.ids.main.ApplicationConfig;
 import de.fraunhofer.fokus.ids.models.Constants;
 import de.fraunhofer.fokus.ids.utils.services.authService.AuthAdapterService;
-import io.vertx.config.ConfigRetriever;
-import io.vertx.config.ConfigRetrieverOptions;
-import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Promise;
 import io.vertx.core.buffer.Buffer;
@@ -28,36 +25,21 @@ public class AuthAdapterServiceVerticle extends AbstractVerticle {
 
     @Override
     public void start(Promise<Void> startPromise) {
-
-        // ConfigStoreOptions confStore = new ConfigStoreOptions()
-        //         .setType("env");
-
-        // ConfigRetrieverOptions options = new ConfigRetrieverOptions().addStore(confStore);
-
-        ConfigRetriever retriever = ConfigRetriever.create(vertx);
-
-        retriever.getConfig(ar -> {
-            if (ar.succeeded()) {
-                Path path = Paths.get("/ids/certs/");
-                JsonObject authConfig = ar.result().getJsonObject(ApplicationConfig.ENV_AUTH_CONFIG, ApplicationConfig.DEFAULT_AUTH_CONFIG);
-
-                AuthAdapterService.create(vertx, path, authConfig, ready -> {
-                    if (ready.succeeded()) {
-                        ServiceBinder binder = new ServiceBinder(vertx);
-                        binder
-                                .setAddress(Constants.AUTHADAPTER_SERVICE)
-                                .register(AuthAdapterService.class, ready.result());
-                        LOGGER.info("AuthAdapterservice successfully started.");
-                        startPromise.complete();
-                    } else {
-                        LOGGER.error(ready.cause());
-                        startPromise.fail(ready.cause());
-                    }
-                });
+        Path path = Paths.get("/ids/certs/");
+        JsonObject authConfig = config().getJsonObject(ApplicationConfig.ENV_AUTH_CONFIG, ApplicationConfig.DEFAULT_AUTH_CONFIG);
+
+        AuthAdapterService.create(vertx, path, authConfig, ready -> {
+            if (ready.succeeded()) {
+                ServiceBinder binder = new ServiceBinder(vertx);
+                binder
+                        .setAddress(Constants.AUTHADAPTER_SERVICE)
+                        .register(AuthAdapterService.class, ready.result());
+                LOGGER.info("AuthAdapterservice successfully started.");
+                startPromise.complete();
             } else {
-                LOGGER.error(ar.cause());
-                startPromise.fail(ar.cause());
+                LOGGER.error(ready.cause());
+                startPromise.fail(ready.cause());
             }
         });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,198 @@
+package de.fraunhofer.fokus.ids.services.authAdapter;
+
+import de.fraunhofer.fokus.ids.models.Constants;
+import de.fraunhofer.fokus.ids.utils.services.authService.AuthAdapterService;
+import io.vertx.core.*;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM wide cache of the dynamic attribute token (DAT) of this connector.
+ * The token is retrieved from the AuthAdapterService once and served until shortly before its expiry.
+ * It is refreshed in the background before it expires, concurrent requests for a missing token share a single retrieval.
+ */
+public class DatTokenCache {
+
+    private static final long REFRESH_BEFORE_EXPIRY = 60 * 1000;
+    private static final long EXPIRY_MARGIN = 5 * 1000;
+    private static final long DEFAULT_VALIDITY = 60 * 1000;
+    private static final long RETRY_DELAY = 5 * 1000;
+    private static final long MIN_REFRESH_DELAY = 5 * 1000;
+
+    private static DatTokenCache instance;
+
+    private final Logger LOGGER = LoggerFactory.getLogger(DatTokenCache.class.getName());
+    private final Vertx vertx;
+    private final AuthAdapterService authAdapterService;
+    private final List<Waiter> waiters = new ArrayList<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    private final AtomicLong refreshTimeTotal = new AtomicLong();
+    private final AtomicLong refreshTimeMax = new AtomicLong();
+    private volatile String token;
+    private volatile long expiresAt;
+    private volatile long lastRefreshTime;
+    private boolean refreshing;
+    private long refreshTimer = -1;
+
+    private DatTokenCache(Vertx vertx) {
+        this.vertx = vertx;
+        this.authAdapterService = AuthAdapterService.createProxy(vertx, Constants.AUTHADAPTER_SERVICE);
+    }
+
+    public static synchronized DatTokenCache getInstance(Vertx vertx) {
+        if (instance == null) {
+            instance = new DatTokenCache(vertx);
+        }
+        return instance;
+    }
+
+    public void getToken(Handler<AsyncResult<String>> resultHandler) {
+        String cached = token;
+        if (cached != null && System.currentTimeMillis() < expiresAt - EXPIRY_MARGIN) {
+            hits.incrementAndGet();
+            resultHandler.handle(Future.succeededFuture(cached));
+            return;
+        }
+        misses.incrementAndGet();
+        boolean startRefresh;
+        synchronized (this) {
+            waiters.add(new Waiter(Vertx.currentContext(), resultHandler));
+            startRefresh = !refreshing;
+            refreshing = true;
+        }
+        if (startRefresh) {
+            refresh();
+        }
+    }
+
+    public JsonObject getMetrics() {
+        long count = refreshes.get();
+        return new JsonObject()
+                .put("hits", hits.get())
+                .put("misses", misses.get())
+                .put("refreshes", count)
+                .put("refreshFailures", refreshFailures.get())
+                .put("refreshLatency", new JsonObject()
+                        .put("lastMs", lastRefreshTime)
+                        .put("avgMs", count == 0 ? 0 : refreshTimeTotal.get() / count)
+                        .put("maxMs", refreshTimeMax.get()))
+                .put("expiresAt", expiresAt);
+    }
+
+    /**
+     * Refreshes the token ahead of its expiry. Requests keep being served from the cache in the meantime.
+     */
+    private void backgroundRefresh() {
+        synchronized (this) {
+            refreshTimer = -1;
+            if (refreshing) {
+                return;
+            }
+            refreshing = true;
+        }
+        refresh();
+    }
+
+    private void refresh() {
+        long start = System.currentTimeMillis();
+        authAdapterService.retrieveToken(reply -> {
+            long duration = System.currentTimeMillis() - start;
+            refreshes.incrementAndGet();
+            refreshTimeTotal.addAndGet(duration);
+            refreshTimeMax.accumulateAndGet(duration, Math::max);
+            lastRefreshTime = duration;
+
+            AsyncResult<String> result;
+            if (reply.succeeded() && reply.result() != null) {
+                expiresAt = readExpiry(reply.result());
+                token = reply.result();
+                scheduleRefresh(refreshDelay(expiresAt - System.currentTimeMillis()));
+                result = Future.succeededFuture(reply.result());
+            } else {
+                refreshFailures.incrementAndGet();
+                LOGGER.error("DAT could not be retrieved.", reply.cause());
+                if (token != null && System.currentTimeMillis() < expiresAt - EXPIRY_MARGIN) {
+                    scheduleRefresh(RETRY_DELAY);
+                }
+                result = reply.failed() ? Future.failedFuture(reply.cause()) : Future.failedFuture("No DAT retrieved.");
+            }
+
+            List<Waiter> finished;
+            synchronized (this) {
+                finished = new ArrayList<>(waiters);
+                waiters.clear();
+                refreshing = false;
+            }
+            for (Waiter waiter : finished) {
+                waiter.dispatch(result);
+            }
+        });
+    }
+
+    /**
+     * Refreshes REFRESH_BEFORE_EXPIRY before the expiry, but tokens with a short lifetime are refreshed after half
+     * of it at the earliest, so that they are not refreshed continuously.
+     */
+    static long refreshDelay(long remaining) {
+        return Math.max(Math.max(remaining - REFRESH_BEFORE_EXPIRY, remaining / 2), MIN_REFRESH_DELAY);
+    }
+
+    private synchronized void scheduleRefresh(long delay) {
+        if (refreshTimer != -1) {
+            vertx.cancelTimer(refreshTimer);
+        }
+        refreshTimer = vertx.setTimer(Math.max(delay, MIN_REFRESH_DELAY), timerId -> backgroundRefresh());
+    }
+
+    private long readExpiry(String jwt) {
+        Long exp = readExpiryClaim(jwt);
+        return exp != null ? exp : System.currentTimeMillis() + DEFAULT_VALIDITY;
+    }
+
+    /**
+     * Reads the exp claim of a JWT in milliseconds, or null if the token has no readable expiry.
+     */
+    static Long readExpiryClaim(String jwt) {
+        String[] parts = jwt.split("\\.");
+        if (parts.length >= 2) {
+            try {
+                JsonObject claims = new JsonObject(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8));
+                Long exp = claims.getLong("exp");
+                if (exp != null) {
+                    return exp * 1000;
+                }
+            } catch (Exception e) {
+                LoggerFactory.getLogger(DatTokenCache.class.getName()).debug("Expiry of the token could not be read.", e);
+            }
+        }
+        return null;
+    }
+
+    private static class Waiter {
+        private final Context context;
+        private final Handler<AsyncResult<String>> resultHandler;
+
+        private Waiter(Context context, Handler<AsyncResult<String>> resultHandler) {
+            this.context = context;
+            this.resultHandler = resultHandler;
+        }
+
+        private void dispatch(AsyncResult<String> result) {
+            if (context == null || context == Vertx.currentContext()) {
+                resultHandler.handle(result);
+            } else {
+                context.runOnContext(v -> resultHandler.handle(result));
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package de.fraunhofer.fokus.ids.services.authAdapter;
+
+import de.fraunhofer.fokus.ids.models.Constants;
+import de.fraunhofer.fokus.ids.utils.services.authService.AuthAdapterService;
+import io.vertx.core.*;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM wide cache of the validation results for the DATs of incoming messages, keyed by the SHA-256 hash of the token.
+ * Valid tokens are cached until their expiry, rejected tokens for NEGATIVE_TTL. The least recently used entries
+ * are evicted once MAX_ENTRIES is reached. Concurrent validations of the same token share a single call to the
+ * AuthAdapterService.
+ */
+public class TokenValidationCache {
+
+    private static final int MAX_ENTRIES = 10000;
+    private static final long NEGATIVE_TTL = 30 * 1000;
+    private static final long DEFAULT_VALIDITY = 60 * 1000;
+
+    private static TokenValidationCache instance;
+
+    private final Logger LOGGER = LoggerFactory.getLogger(TokenValidationCache.class.getName());
+    private final AuthAdapterService authAdapterService;
+    private final Map<String, Validation> entries = new LinkedHashMap<String, Validation>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Validation> eldest) {
+            if (size() > MAX_ENTRIES) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Map<String, List<Waiter>> pending = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong validations = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private TokenValidationCache(Vertx vertx) {
+        this.authAdapterService = AuthAdapterService.createProxy(vertx, Constants.AUTHADAPTER_SERVICE);
+    }
+
+    public static synchronized TokenValidationCache getInstance(Vertx vertx) {
+        if (instance == null) {
+            instance = new TokenValidationCache(vertx);
+        }
+        return instance;
+    }
+
+    /**
+     * Succeeds if the token is valid, fails otherwise.
+     */
+    public void isAuthenticated(String token, Handler<AsyncResult<Void>> resultHandler) {
+        String key = hash(token);
+        long now = System.currentTimeMillis();
+        Validation cached = null;
+        boolean startValidation = false;
+        synchronized (this) {
+            Validation entry = entries.get(key);
+            if (entry != null && now < entry.expiresAt) {
+                cached = entry;
+            } else {
+                if (entry != null) {
+                    entries.remove(key);
+                }
+                List<Waiter> waiters = pending.get(key);
+                startValidation = waiters == null;
+                if (startValidation) {
+                    waiters = new ArrayList<>();
+                    pending.put(key, waiters);
+                }
+                waiters.add(new Waiter(Vertx.currentContext(), resultHandler));
+            }
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            resultHandler.handle(cached.result());
+            return;
+        }
+        misses.incrementAndGet();
+        if (startValidation) {
+            validate(key, token);
+        }
+    }
+
+    public synchronized JsonObject getMetrics() {
+        return new JsonObject()
+                .put("hits", hits.get())
+                .put("misses", misses.get())
+                .put("validations", validations.get())
+                .put("rejections", rejections.get())
+                .put("evictions", evictions.get())
+                .put("size", entries.size());
+    }
+
+    private void validate(String key, String token) {
+        validations.incrementAndGet();
+        authAdapterService.isAuthenticated(token, reply -> {
+            AsyncResult<Void> result;
+            List<Waiter> waiters;
+            synchronized (this) {
+                if (reply.succeeded()) {
+                    Long exp = DatTokenCache.readExpiryClaim(token);
+                    entries.put(key, new Validation(true, exp != null ? exp : System.currentTimeMillis() + DEFAULT_VALIDITY));
+                    result = Future.succeededFuture();
+                } else {
+                    if (isRejection(reply.cause())) {
+                        rejections.incrementAndGet();
+                        entries.put(key, new Validation(false, System.currentTimeMillis() + NEGATIVE_TTL));
+                    } else {
+                        LOGGER.error("Token could not be validated.", reply.cause());
+                    }
+                    result = Future.failedFuture(reply.cause());
+                }
+                waiters = pending.remove(key);
+            }
+            for (Waiter waiter : waiters) {
+                waiter.dispatch(result);
+            }
+        });
+    }
+
+    /**
+     * Only an explicit verdict on the token, a ServiceException with code 401 or 403, is cached. Other failures
+     * (timeouts, a missing AuthAdapterService, an unreachable DAPS or JWKS endpoint) say nothing about the token.
+     */
+    private boolean isRejection(Throwable cause) {
+        if (cause instanceof ReplyException && ((ReplyException) cause).failureType() == ReplyFailure.RECIPIENT_FAILURE) {
+            int code = ((ReplyException) cause).failureCode();
+            return code == 401 || code == 403;
+        }
+        return false;
+    }
+
+    private String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Validation {
+        private final boolean valid;
+        private final long expiresAt;
+
+        private Validation(boolean valid, long expiresAt) {
+            this.valid = valid;
+            this.expiresAt = expiresAt;
+        }
+
+        private AsyncResult<Void> result() {
+            return valid ? Future.succeededFuture() : Future.failedFuture("Token was rejected.");
+        }
+    }
+
+    private static class Waiter {
+        private final Context context;
+        private final Handler<AsyncResult<Void>> resultHandler;
+
+        private Waiter(Context context, Handler<AsyncResult<Void>> resultHandler) {
+            this.context = context;
+            this.resultHandler = resultHandler;
+        }
+
+        private void dispatch(AsyncResult<Void> result) {
+            if (context == null || context == Vertx.currentContext()) {
+                resultHandler.handle(result);
+            } else {
+                context.runOnContext(v -> resultHandler.handle(result));
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package de.fraunhofer.fokus.ids.services.brokerService;
 
+import de.fraunhofer.fokus.ids.models.MultipartMessage;
 import de.fraunhofer.fokus.ids.persistence.managers.BrokerManager;
 import de.fraunhofer.fokus.ids.services.ConfigService;
 import de.fraunhofer.fokus.ids.services.IDSService;
@@ -12,19 +13,10 @@ import io.vertx.core.buffer.Buffer;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.web.client.WebClient;
-import org.apache.http.Header;
-import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.entity.mime.content.ContentBody;
-import org.apache.http.entity.mime.content.StringBody;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -53,7 +45,7 @@ public class BrokerServiceImpl implements BrokerService {
 
     @Override
     public BrokerService subscribe(String url, Handler<AsyncResult<Void>> resultHandler){
-        Promise<Connector> connectorPromise = Promise.promise();
+        Promise<String> connectorPromise = Promise.promise();
         Promise<Message> messagePromise = Promise.promise();
         createAvailableIDSMessages(connectorPromise, messagePromise);
 
@@ -63,7 +55,7 @@ public class BrokerServiceImpl implements BrokerService {
 
     @Override
     public BrokerService subscribeAll(Handler<AsyncResult<Void>> resultHandler){
-        Promise<Connector> connectorPromise = Promise.promise();
+        Promise<String> connectorPromise = Promise.promise();
         Promise<Message> messagePromise = Promise.promise();
         createAvailableIDSMessages(connectorPromise, messagePromise);
 
@@ -71,10 +63,10 @@ public class BrokerServiceImpl implements BrokerService {
         return this;
     }
 
-    private void createAvailableIDSMessages(Promise<Connector> connectorPromise, Promise<Message> messagePromise) {
+    private void createAvailableIDSMessages(Promise<String> connectorPromise, Promise<Message> messagePromise) {
         configService.getConfiguration(reply -> {
             if(reply.succeeded()) {
-                idsService.getConnector(reply.result(), connectorPromise);
+                idsService.getConnectorJson(reply.result(), connectorPromise);
                 idsService.createRegistrationMessage(reply.result(), messagePromise);
             } else {
                 LOGGER.info(reply.cause());
@@ -86,7 +78,7 @@ public class BrokerServiceImpl implements BrokerService {
 
     @Override
     public BrokerService unsubscribeAll(Handler<AsyncResult<Void>> resultHandler){
-        Promise<Connector> connectorPromise = Promise.promise();
+        Promise<String> connectorPromise = Promise.promise();
         Promise<Message> messagePromise = Promise.promise();
         createUnavailableIDSMessages(connectorPromise, messagePromise);
 
@@ -96,7 +88,7 @@ public class BrokerServiceImpl implements BrokerService {
 
     @Override
     public BrokerService unsubscribe(String url, Handler<AsyncResult<Void>> resultHandler){
-        Promise<Connector> connectorPromise = Promise.promise();
+        Promise<String> connectorPromise = Promise.promise();
         Promise<Message> messagePromise = Promise.promise();
         createUnavailableIDSMessages(connectorPromise, messagePromise);
 
@@ -104,10 +96,10 @@ public class BrokerServiceImpl implements BrokerService {
         return this;
     }
 
-    private void createUnavailableIDSMessages(Promise<Connector> connectorPromise, Promise<Message> messagePromise){
+    private void createUnavailableIDSMessages(Promise<String> connectorPromise, Promise<Message> messagePromise){
         configService.getConfiguration(reply -> {
             if(reply.succeeded()) {
-                idsService.getConnector(reply.result(), connectorPromise);
+                idsService.getConnectorJson(reply.result(), connectorPromise);
                 idsService.createUnregistrationMessage(reply.result(), messagePromise);
             } else {
                 LOGGER.info(reply.cause());
@@ -119,7 +111,7 @@ public class BrokerServiceImpl implements BrokerService {
 
     @Override
     public BrokerService update(Handler<AsyncResult<Void>> resultHandler){
-        Promise<Connector> connectorPromise = Promise.promise();
+        Promise<String> connectorPromise = Promise.promise();
         Promise<Message> messagePromise = Promise.promise();
         createUpdateIDSMessages(connectorPromise, messagePromise);
 
@@ -127,10 +119,10 @@ public class BrokerServiceImpl implements BrokerService {
         return this;
     }
 
-    private void createUpdateIDSMessages(Promise<Connector> connectorPromise, Promise<Message> messagePromise) {
+    private void createUpdateIDSMessages(Promise<String> connectorPromise, Promise<Message> messagePromise) {
         configService.getConfiguration(reply -> {
             if(reply.succeeded()) {
-                idsService.getConnector(reply.result(), connectorPromise);
+                idsService.getConnectorJson(reply.result(), connectorPromise);
                 idsService.createUpdateMessage(reply.result(), messagePromise);
             } else {
                 LOGGER.info(reply.cause());
@@ -140,7 +132,7 @@ public class BrokerServiceImpl implements BrokerService {
         });
     }
 
-    private void sendSingle(String url, Future<Connector> connectorFuture, Future messageFuture, Handler<AsyncResult<Void>> resultHandler){
+    private void sendSingle(String url, Future<String> connectorFuture, Future messageFuture, Handler<AsyncResult<Void>> resultHandler){
         CompositeFuture.all(connectorFuture, messageFuture).onComplete(reply -> {
             if(reply.succeeded()) {
                 List<URL> urls = new ArrayList<>();
@@ -159,7 +151,7 @@ public class BrokerServiceImpl implements BrokerService {
         });
     }
 
-    private void sendMulti(Future<Connector> connectorFuture, Future messageFuture, Handler<AsyncResult<Void>> resultHandler){
+    private void sendMulti(Future<String> connectorFuture, Future messageFuture, Handler<AsyncResult<Void>> resultHandler){
         CompositeFuture.all(connectorFuture, messageFuture).onComplete(reply -> {
             if(reply.succeeded()){
                 getBrokerURLs(reply2 -> {
@@ -183,40 +175,33 @@ public class BrokerServiceImpl implements BrokerService {
         });
     }
 
-    private void sendMessage(HttpEntity buffer, List<URL> urls, Handler<AsyncResult<Void>> resultHandler){
-        if(buffer != null) {
+    private void sendMessage(MultipartMessage message, List<URL> urls, Handler<AsyncResult<Void>> resultHandler){
+        if(message != null) {
             if(urls.isEmpty()){
                 resultHandler.handle(Future.succeededFuture());
             } else {
-                try(ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-                    Header contentTypeHeader = buffer.getContentType();
-                    buffer.writeTo(baos);
-                    Buffer brokerMessage = Buffer.buffer().appendString(baos.toString());
-                    for (URL url : urls) {
-                        webClient
-                                .postAbs(url.toString())
-                                .putHeader(contentTypeHeader.getName(), contentTypeHeader.getValue())
-                                .sendBuffer(brokerMessage, ar -> {
-                                    if (ar.succeeded()) {
-                                        Optional<IDSMessage> answer = IDSMessageParser.parse(ar.result().headers().get(HttpHeaders.CONTENT_TYPE), ar.result().bodyAsString());
-                                        if (answer.isPresent() && answer.get().getHeader().isPresent()) {
-                                            if (answer.get().getHeader().get() instanceof RejectionMessage) {
-                                                resultHandler.handle(Future.failedFuture(((RejectionMessage) answer.get().getHeader().get()).getRejectionReason().toString()));
-                                            } else {
-                                                resultHandler.handle(Future.succeededFuture());
-                                            }
+                Buffer brokerMessage = message.toBuffer();
+                for (URL url : urls) {
+                    webClient
+                            .postAbs(url.toString())
+                            .putHeader(HttpHeaders.CONTENT_TYPE, message.contentType())
+                            .sendBuffer(brokerMessage, ar -> {
+                                if (ar.succeeded()) {
+                                    Optional<IDSMessage> answer = IDSMessageParser.parse(ar.result().headers().get(HttpHeaders.CONTENT_TYPE), ar.result().bodyAsString());
+                                    if (answer.isPresent() && answer.get().getHeader().isPresent()) {
+                                        if (answer.get().getHeader().get() instanceof RejectionMessage) {
+                                            resultHandler.handle(Future.failedFuture(((RejectionMessage) answer.get().getHeader().get()).getRejectionReason().toString()));
                                         } else {
                                             resultHandler.handle(Future.succeededFuture());
                                         }
                                     } else {
-                                        LOGGER.error(ar.cause());
-                                        resultHandler.handle(Future.failedFuture(ar.cause()));
+                                        resultHandler.handle(Future.succeededFuture());
                                     }
-                                });
-                    }
-                } catch (IOException e) {
-                    LOGGER.error(e);
-                    resultHandler.handle(Future.failedFuture(e));
+                                } else {
+                                    LOGGER.error(ar.cause());
+                                    resultHandler.handle(Future.failedFuture(ar.cause()));
+                                }
+                            });
                 }
             }
         }
@@ -246,19 +231,12 @@ public class BrokerServiceImpl implements BrokerService {
         });
     }
 
-    private HttpEntity createBrokerMessage(ConnectorNotificationMessage message, Connector connector){
+    private MultipartMessage createBrokerMessage(ConnectorNotificationMessage message, String connector){
 
         try{
-            ContentBody result = new StringBody(serializer.serialize(connector), ContentType.create("application/json", StandardCharsets.UTF_8));
-            ContentBody cb = new StringBody(serializer.serialize(message), ContentType.create("application/json", StandardCharsets.UTF_8));
-
-            MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create()
-                    .setCharset(StandardCharsets.UTF_8)
-                    .setContentType(ContentType.MULTIPART_FORM_DATA)
-                    .addPart("header", cb)
-                    .addPart("payload", result);
-
-            return multipartEntityBuilder.build();
+            return new MultipartMessage()
+                    .addPart("header", serializer.serialize(message), "application/json; charset=UTF-8")
+                    .addPart("payload", connector, "application/json; charset=UTF-8");
         } catch (Exception e){
             LOGGER.error(e);
         }
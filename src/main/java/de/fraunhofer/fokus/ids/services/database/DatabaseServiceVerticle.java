@@ -1,9 +1,6 @@
 package de.fraunhofer.fokus.ids.services.database;
 
 import de.fraunhofer.fokus.ids.main.ApplicationConfig;
-import io.vertx.config.ConfigRetriever;
-import io.vertx.config.ConfigRetrieverOptions;
-import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
@@ -22,35 +19,21 @@ public class DatabaseServiceVerticle extends AbstractVerticle {
 
     @Override
     public void start(Promise<Void> startPromise) {
-  
-        // ConfigStoreOptions confStore = new ConfigStoreOptions()
-        //         .setType("env");
-
-        // ConfigRetrieverOptions options = new ConfigRetrieverOptions().addStore(confStore);
-        
-        ConfigRetriever retriever = ConfigRetriever.create(vertx);
-
-        retriever.getConfig(ar -> {
-            if (ar.succeeded()) {
-                JsonObject env = ar.result();
-                JsonObject config = new JsonObject()
-                        .put("url", "jdbc:sqlite:"+env.getString(ApplicationConfig.ENV_REPOSITORY + "db", ApplicationConfig.DEFAULT_REPOSITORY))
-                        .put("driver_class", "org.sqlite.jdbcDriver")
-                        .put("max_pool_size", 30);
-                SQLClient jdbc = JDBCClient.createShared(vertx, config);
-                DatabaseService.create(jdbc, ready -> {
-                    if (ready.succeeded()) {
-                        ServiceBinder binder = new ServiceBinder(vertx);
-                        binder
-                                .setAddress("de.fraunhofer.fokus.ids.databaseService")
-                                .register(DatabaseService.class, ready.result());
-                        startPromise.complete();
-                    } else {
-                        startPromise.fail(ready.cause());
-                    }
-                });
+        JsonObject env = config();
+        JsonObject config = new JsonObject()
+                .put("url", "jdbc:sqlite:"+env.getString(ApplicationConfig.ENV_REPOSITORY + "db", ApplicationConfig.DEFAULT_REPOSITORY))
+                .put("driver_class", "org.sqlite.jdbcDriver")
+                .put("max_pool_size", 30);
+        SQLClient jdbc = JDBCClient.createShared(vertx, config);
+        DatabaseService.create(jdbc, ready -> {
+            if (ready.succeeded()) {
+                ServiceBinder binder = new ServiceBinder(vertx);
+                binder
+                        .setAddress("de.fraunhofer.fokus.ids.databaseService")
+                        .register(DatabaseService.class, ready.result());
+                startPromise.complete();
             } else {
-                LOGGER.error("Config could not be retrieved.");
+                startPromise.fail(ready.cause());
             }
         });
     }
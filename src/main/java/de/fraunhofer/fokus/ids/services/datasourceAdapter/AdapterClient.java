@@ -0,0 +1,366 @@
+package de.fraunhofer.fokus.ids.services.datasourceAdapter;
+
+import io.netty.channel.ConnectTimeoutException;
+import io.vertx.circuitbreaker.CircuitBreaker;
+import io.vertx.circuitbreaker.CircuitBreakerOptions;
+import io.vertx.circuitbreaker.OpenCircuitException;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.serviceproxy.ServiceException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * The HTTP client of one data source adapter, configured by the client profile given at the adapter's registration.
+ * Missing profile values are taken from DEFAULTS. connectTimeout and requestTimeout are in milliseconds,
+ * keepAliveTimeout and idleTimeout in seconds. The request timeout fails a request if the adapter sends no data for
+ * that long, so long running downloads are not cut off. With "http2" the adapter is called via h2c (prior knowledge)
+ * and requests are multiplexed on up to http2MaxPoolSize connections.
+ * Calls made through execute are guarded by a circuit breaker, which opens after maxFailures failed calls in a row
+ * and lets a single trial call through after resetTimeout milliseconds, and by a bulkhead of maxConcurrentCalls.
+ * Calls that are not let through fail immediately with a ServiceException with code 503. A call that is not completed
+ * within callTimeout milliseconds (at least requestTimeout) fails and counts as a failure.
+ * Requests are spread over the registered instances of the adapter, by default to the healthy instance with the
+ * fewest outstanding requests ("loadBalancing": "least-outstanding", ties are broken round-robin) or round-robin
+ * ("round-robin"). An instance is evicted after maxInstanceFailures failed requests in a row or a failed health check,
+ * a GET of healthCheckPath every healthCheckInterval milliseconds, and re-admitted after a successful health check.
+ * Any answer below 500 counts as healthy, so the health check does not need to be authenticated.
+ */
+public class AdapterClient {
+
+    static final JsonObject DEFAULTS = new JsonObject()
+            .put("maxPoolSize", 20)
+            .put("maxWaitQueueSize", 500)
+            .put("keepAlive", true)
+            .put("keepAliveTimeout", 60)
+            .put("http2", false)
+            .put("http2MaxPoolSize", 1)
+            .put("http2MultiplexingLimit", 100)
+            .put("connectTimeout", 5000)
+            .put("idleTimeout", 60)
+            .put("requestTimeout", 60000)
+            .put("callTimeout", 300000)
+            .put("maxConcurrentCalls", 50)
+            .put("maxFailures", 5)
+            .put("resetTimeout", 30000)
+            .put("loadBalancing", "least-outstanding")
+            .put("maxInstanceFailures", 3)
+            .put("healthCheckPath", "/supported/")
+            .put("healthCheckInterval", 10000);
+
+    private static final long HEALTH_CHECK_TIMEOUT = 5000;
+
+    public static final int UNAVAILABLE = 503;
+
+    private final Logger LOGGER = LoggerFactory.getLogger(AdapterClient.class.getName());
+    private final Vertx vertx;
+    private final String name;
+    private final JsonObject profile;
+    private final HttpClient httpClient;
+    private final WebClient webClient;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong active = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CircuitBreaker circuitBreaker;
+    private final AtomicInteger nextInstance = new AtomicInteger();
+    private final long healthCheckTimer;
+    private volatile List<AdapterInstance> instances = Collections.emptyList();
+
+    AdapterClient(Vertx vertx, String name, JsonObject profile) {
+        this.vertx = vertx;
+        this.name = name;
+        this.profile = profile;
+        this.httpClient = vertx.createHttpClient(toOptions(profile));
+        this.webClient = WebClient.wrap(httpClient);
+        this.circuitBreaker = CircuitBreaker.create("adapter-" + name, vertx, new CircuitBreakerOptions()
+                .setMaxFailures(profile.getInteger("maxFailures"))
+                .setResetTimeout(profile.getLong("resetTimeout"))
+                .setTimeout(Math.max(profile.getLong("callTimeout"), profile.getLong("requestTimeout"))));
+        long interval = profile.getLong("healthCheckInterval");
+        this.healthCheckTimer = interval > 0 ? vertx.setPeriodic(interval, id -> checkHealth()) : -1;
+    }
+
+    /**
+     * True if the call failed because the adapter is temporarily not available, also for failures received
+     * from the DataSourceAdapterService proxy.
+     */
+    public static boolean isUnavailable(Throwable cause) {
+        return cause instanceof ReplyException && ((ReplyException) cause).failureCode() == UNAVAILABLE;
+    }
+
+    /**
+     * The profile with all defaults applied.
+     */
+    static JsonObject resolve(JsonObject profile) {
+        JsonObject resolved = DEFAULTS.copy();
+        if (profile != null) {
+            resolved.mergeIn(profile);
+        }
+        return resolved;
+    }
+
+    /**
+     * Checks the value types and ranges of a profile given at registration.
+     */
+    public static boolean isValid(JsonObject profile) {
+        try {
+            JsonObject resolved = resolve(profile);
+            toOptions(resolved);
+            return resolved.getLong("requestTimeout") >= 0 && resolved.getLong("callTimeout") > 0
+                    && resolved.getInteger("maxConcurrentCalls") > 0
+                    && resolved.getInteger("maxFailures") > 0 && resolved.getLong("resetTimeout") >= 0
+                    && ("least-outstanding".equals(resolved.getString("loadBalancing")) || "round-robin".equals(resolved.getString("loadBalancing")))
+                    && resolved.getInteger("maxInstanceFailures") > 0 && resolved.getString("healthCheckPath") != null
+                    && resolved.getLong("healthCheckInterval") >= 0;
+        } catch (ClassCastException | IllegalArgumentException | NullPointerException e) {
+            return false;
+        }
+    }
+
+    public WebClient webClient() {
+        return webClient;
+    }
+
+    public HttpClient httpClient() {
+        return httpClient;
+    }
+
+    public long requestTimeout() {
+        return profile.getLong("requestTimeout");
+    }
+
+    JsonObject profile() {
+        return profile;
+    }
+
+    /**
+     * Replaces the known instances by the given [{"host", "port"}], the state of instances that stay is kept.
+     */
+    void updateInstances(JsonArray endpoints) {
+        Map<String, JsonObject> updated = new LinkedHashMap<>();
+        for (int i = 0; i < endpoints.size(); i++) {
+            JsonObject endpoint = endpoints.getJsonObject(i);
+            updated.put(AdapterInstance.key(endpoint.getString("host"), endpoint.getInteger("port")), endpoint);
+        }
+        List<AdapterInstance> current = instances;
+        if (current.size() == updated.size() && current.stream().allMatch(instance -> updated.containsKey(instance.key()))) {
+            return;
+        }
+        synchronized (this) {
+            Map<String, AdapterInstance> existing = new HashMap<>();
+            for (AdapterInstance instance : instances) {
+                existing.put(instance.key(), instance);
+            }
+            List<AdapterInstance> replaced = new ArrayList<>();
+            updated.forEach((key, endpoint) -> replaced.add(existing.containsKey(key) ? existing.get(key)
+                    : new AdapterInstance(this, endpoint.getString("host"), endpoint.getInteger("port"))));
+            instances = Collections.unmodifiableList(replaced);
+        }
+    }
+
+    /**
+     * Selects the instance for the next request. If no instance is healthy all of them are considered, so that
+     * a failing health check alone cannot make the adapter unreachable.
+     */
+    public AdapterInstance select() {
+        List<AdapterInstance> current = instances;
+        List<AdapterInstance> candidates = new ArrayList<>(current.size());
+        for (AdapterInstance instance : current) {
+            if (instance.isHealthy()) {
+                candidates.add(instance);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = current;
+        }
+        int start = Math.floorMod(nextInstance.getAndIncrement(), candidates.size());
+        AdapterInstance selected = candidates.get(start);
+        if ("least-outstanding".equals(profile.getString("loadBalancing"))) {
+            for (int i = 1; i < candidates.size(); i++) {
+                AdapterInstance candidate = candidates.get((start + i) % candidates.size());
+                if (candidate.outstanding() < selected.outstanding()) {
+                    selected = candidate;
+                }
+            }
+        }
+        return selected;
+    }
+
+    void instanceFailed(AdapterInstance instance, int consecutiveFailures) {
+        if (consecutiveFailures >= profile.getInteger("maxInstanceFailures") && instance.setHealthy(false)) {
+            LOGGER.warn("Instance " + instance.key() + " of adapter " + name + " evicted after " + consecutiveFailures + " failed requests.");
+        }
+    }
+
+    private void checkHealth() {
+        for (AdapterInstance instance : instances) {
+            webClient.get(instance.port(), instance.host(), profile.getString("healthCheckPath"))
+                    .timeout(HEALTH_CHECK_TIMEOUT)
+                    .send(ar -> {
+                        boolean healthy = ar.succeeded() && ar.result().statusCode() < 500;
+                        if (instance.setHealthy(healthy)) {
+                            if (healthy) {
+                                LOGGER.info("Instance " + instance.key() + " of adapter " + name + " is healthy again.");
+                            } else {
+                                LOGGER.warn("Instance " + instance.key() + " of adapter " + name + " evicted after a failed health check.");
+                            }
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Counts the request as in flight until the returned handler is called.
+     */
+    <T> Handler<AsyncResult<T>> track(Handler<AsyncResult<T>> resultHandler) {
+        requests.incrementAndGet();
+        active.incrementAndGet();
+        return ar -> {
+            active.decrementAndGet();
+            if (ar.failed()) {
+                failures.incrementAndGet();
+                if (ar.cause() instanceof TimeoutException || ar.cause() instanceof ConnectTimeoutException) {
+                    timeouts.incrementAndGet();
+                }
+            }
+            resultHandler.handle(ar);
+        };
+    }
+
+    /**
+     * Fails answers with a status code of 500 or above, so that they count as failures of the instance and of the
+     * circuit breaker.
+     */
+    static <T> Handler<AsyncResult<HttpResponse<T>>> failOnServerError(Handler<AsyncResult<HttpResponse<T>>> resultHandler) {
+        return ar -> {
+            if (ar.succeeded() && ar.result().statusCode() >= 500) {
+                resultHandler.handle(Future.failedFuture("Adapter answered with status code " + ar.result().statusCode()));
+            } else {
+                resultHandler.handle(ar);
+            }
+        };
+    }
+
+    /**
+     * Runs the call, which has to complete the promise once the adapter answered, through the circuit breaker
+     * and the bulkhead of the adapter.
+     */
+    public <T> void execute(Handler<Promise<T>> call, Handler<AsyncResult<T>> resultHandler) {
+        executeStreaming((promise, released) -> {
+            promise.future().onComplete(ar -> released.tryComplete());
+            call.handle(promise);
+        }, resultHandler);
+    }
+
+    /**
+     * Like execute, for calls that hand out a response body that is read afterwards. The circuit breaker judges the
+     * call by the promise, which is completed once the response arrived, while the call keeps its bulkhead slot until
+     * it completes released, e.g. when the body ended or failed. A failed call or a call the circuit breaker gave up on
+     * is released right away, a response arriving after that has to be discarded.
+     */
+    public <T> void executeStreaming(BiConsumer<Promise<T>, Promise<Void>> call, Handler<AsyncResult<T>> resultHandler) {
+        if (calls.incrementAndGet() > profile.getInteger("maxConcurrentCalls")) {
+            calls.decrementAndGet();
+            rejected.incrementAndGet();
+            resultHandler.handle(Future.failedFuture(unavailable("too many concurrent calls")));
+            return;
+        }
+        Promise<Void> released = Promise.promise();
+        released.future().onComplete(v -> calls.decrementAndGet());
+        circuitBreaker.<T>execute(breakerPromise -> {
+            Promise<T> promise = Promise.promise();
+            promise.future().onComplete(ar -> {
+                if (ar.succeeded()) {
+                    breakerPromise.tryComplete(ar.result());
+                } else {
+                    released.tryComplete();
+                    breakerPromise.tryFail(ar.cause());
+                }
+            });
+            call.accept(promise, released);
+        }).onComplete(ar -> {
+            if (ar.failed()) {
+                released.tryComplete();
+            }
+            if (ar.failed() && ar.cause() instanceof OpenCircuitException) {
+                rejected.incrementAndGet();
+                resultHandler.handle(Future.failedFuture(unavailable("circuit breaker open")));
+            } else {
+                resultHandler.handle(ar);
+            }
+        });
+    }
+
+    private ServiceException unavailable(String reason) {
+        return new ServiceException(UNAVAILABLE, "Adapter " + name + " is temporarily not available: " + reason + ".");
+    }
+
+    JsonObject getMetrics() {
+        JsonArray instanceMetrics = new JsonArray();
+        for (AdapterInstance instance : instances) {
+            instanceMetrics.add(instance.getMetrics());
+        }
+        return new JsonObject()
+                .put("requests", requests.get())
+                .put("active", active.get())
+                .put("failures", failures.get())
+                .put("timeouts", timeouts.get())
+                .put("circuitBreaker", circuitBreaker.state().name())
+                .put("consecutiveFailures", circuitBreaker.failureCount())
+                .put("calls", calls.get())
+                .put("rejected", rejected.get())
+                .put("instances", instanceMetrics)
+                .put("profile", profile.copy());
+    }
+
+    void close() {
+        if (healthCheckTimer != -1) {
+            vertx.cancelTimer(healthCheckTimer);
+        }
+        circuitBreaker.close();
+        webClient.close();
+    }
+
+    private static HttpClientOptions toOptions(JsonObject profile) {
+        HttpClientOptions options = new HttpClientOptions()
+                .setMaxPoolSize(profile.getInteger("maxPoolSize"))
+                .setMaxWaitQueueSize(profile.getInteger("maxWaitQueueSize"))
+                .setKeepAlive(profile.getBoolean("keepAlive"))
+                .setKeepAliveTimeout(profile.getInteger("keepAliveTimeout"))
+                .setConnectTimeout(profile.getInteger("connectTimeout"))
+                .setIdleTimeout(profile.getInteger("idleTimeout"));
+        if (profile.getBoolean("http2")) {
+            options.setProtocolVersion(HttpVersion.HTTP_2)
+                    .setHttp2ClearTextUpgrade(false)
+                    .setHttp2MaxPoolSize(profile.getInteger("http2MaxPoolSize"))
+                    .setHttp2MultiplexingLimit(profile.getInteger("http2MultiplexingLimit"))
+                    .setHttp2KeepAliveTimeout(profile.getInteger("keepAliveTimeout"));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,83 @@
+package de.fraunhofer.fokus.ids.services.datasourceAdapter;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JVM wide HTTP clients of the data source adapters, one per adapter name, shared by all services and controllers
+ * that call adapters. A client is created on first use with the client profile of the adapter endpoint and replaced
+ * when the adapter is registered again with a different profile. The replaced client is closed after a grace period
+ * so that requests still running on it can finish. The instances of the adapter are taken from the AdapterRegistry,
+ * adapters that are not known to the registry yet are called at the endpoint passed in.
+ */
+public class AdapterClients {
+
+    private static final long CLOSE_DELAY = 5 * 60 * 1000;
+
+    private static AdapterClients instance;
+
+    private final Logger LOGGER = LoggerFactory.getLogger(AdapterClients.class.getName());
+    private final Vertx vertx;
+    private final Map<String, AdapterClient> clients = new ConcurrentHashMap<>();
+
+    private AdapterClients(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    public static synchronized AdapterClients getInstance(Vertx vertx) {
+        if (instance == null) {
+            instance = new AdapterClients(vertx);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the client of the adapter, the endpoint is the one returned by AdapterRegistry or ArtifactRoute.
+     */
+    public AdapterClient client(String name, JsonObject endpoint) {
+        JsonObject registered = AdapterRegistry.getInstance().get(name);
+        JsonObject current = registered != null ? registered : endpoint;
+        JsonObject profile = AdapterClient.resolve(current.getJsonObject("client"));
+        AdapterClient client = clients.get(name);
+        if (client == null || !client.profile().equals(profile)) {
+            client = replace(name, profile);
+        }
+        client.updateInstances(instances(current));
+        return client;
+    }
+
+    private AdapterClient replace(String name, JsonObject profile) {
+        return clients.compute(name, (key, existing) -> {
+            if (existing != null && existing.profile().equals(profile)) {
+                return existing;
+            }
+            if (existing != null) {
+                LOGGER.info("Client profile of adapter " + name + " changed, replacing its client.");
+                vertx.setTimer(CLOSE_DELAY, id -> existing.close());
+            }
+            return new AdapterClient(vertx, name, profile);
+        });
+    }
+
+    private JsonArray instances(JsonObject endpoint) {
+        JsonArray instances = endpoint.getJsonArray("instances");
+        if (instances == null || instances.isEmpty()) {
+            instances = new JsonArray().add(new JsonObject()
+                    .put("host", endpoint.getString("host"))
+                    .put("port", endpoint.getInteger("port")));
+        }
+        return instances;
+    }
+
+    public JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        clients.forEach((name, client) -> metrics.put(name, client.getMetrics()));
+        return metrics;
+    }
+}
@@ -0,0 +1,94 @@
+package de.fraunhofer.fokus.ids.services.datasourceAdapter;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One registered instance (host and port) of a data source adapter. Requests have to be sent through track,
+ * which counts the outstanding requests used for the instance selection and reports failures to the AdapterClient.
+ */
+public class AdapterInstance {
+
+    private final AdapterClient client;
+    private final String host;
+    private final int port;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile boolean healthy = true;
+
+    AdapterInstance(AdapterClient client, String host, int port) {
+        this.client = client;
+        this.host = host;
+        this.port = port;
+    }
+
+    static String key(String host, int port) {
+        return host + ":" + port;
+    }
+
+    public String host() {
+        return host;
+    }
+
+    public int port() {
+        return port;
+    }
+
+    String key() {
+        return key(host, port);
+    }
+
+    boolean isHealthy() {
+        return healthy;
+    }
+
+    int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Counts the request as outstanding on this instance until the returned handler is called.
+     */
+    public <T> Handler<AsyncResult<T>> track(Handler<AsyncResult<T>> resultHandler) {
+        requests.incrementAndGet();
+        outstanding.incrementAndGet();
+        return client.track(ar -> {
+            outstanding.decrementAndGet();
+            if (ar.failed()) {
+                failures.incrementAndGet();
+                client.instanceFailed(this, consecutiveFailures.incrementAndGet());
+            } else {
+                consecutiveFailures.set(0);
+            }
+            resultHandler.handle(ar);
+        });
+    }
+
+    /**
+     * Returns true if the state changed.
+     */
+    boolean setHealthy(boolean healthy) {
+        if (healthy) {
+            consecutiveFailures.set(0);
+        }
+        boolean changed = this.healthy != healthy;
+        this.healthy = healthy;
+        return changed;
+    }
+
+    JsonObject getMetrics() {
+        return new JsonObject()
+                .put("host", host)
+                .put("port", port)
+                .put("healthy", healthy)
+                .put("outstanding", outstanding.get())
+                .put("requests", requests.get())
+                .put("failures", failures.get());
+    }
+}
@@ -0,0 +1,158 @@
+package de.fraunhofer.fokus.ids.services.datasourceAdapter;
+
+import de.fraunhofer.fokus.ids.persistence.util.DatabaseConnector;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.sqlclient.Tuple;
+
+import java.util.*;
+
+/**
+ * JVM wide registry of the data source adapters, keyed by the data source type they serve.
+ * The adapters table is loaded once at startup and updated on every registration. Lookups read an immutable
+ * snapshot without locking, registrations replace the snapshot with an updated copy.
+ * Adapters registered by another connector instance are loaded from the database on their first lookup.
+ * An adapter can run as several instances, every registration adds its address to the instances of the adapter.
+ */
+public class AdapterRegistry {
+
+    private static final AdapterRegistry INSTANCE = new AdapterRegistry();
+    private static final String FINDALL_QUERY = "SELECT a.name, a.host, a.port, a.client_profile, i.host AS instance_host, i.port AS instance_port " +
+            "FROM adapters a LEFT JOIN adapter_instances i ON i.name = a.name ORDER BY a.name, i.id";
+    private static final String FINDBYNAME_QUERY = "SELECT a.name, a.host, a.port, a.client_profile, i.host AS instance_host, i.port AS instance_port " +
+            "FROM adapters a LEFT JOIN adapter_instances i ON i.name = a.name WHERE a.name = $1 ORDER BY i.id";
+
+    private final Logger LOGGER = LoggerFactory.getLogger(AdapterRegistry.class.getName());
+    private volatile Map<String, JsonObject> adapters = Collections.emptyMap();
+
+    private AdapterRegistry() {
+    }
+
+    public static AdapterRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public void load(Handler<AsyncResult<Void>> resultHandler) {
+        DatabaseConnector.getInstance().query(FINDALL_QUERY, Tuple.tuple(), reply -> {
+            if (reply.succeeded()) {
+                Map<String, JsonObject> loaded = toEndpoints(reply.result());
+                synchronized (this) {
+                    adapters = Collections.unmodifiableMap(loaded);
+                }
+                LOGGER.info(loaded.size() + " adapter(s) loaded.");
+                resultHandler.handle(Future.succeededFuture());
+            } else {
+                LOGGER.error("Adapters could not be loaded.", reply.cause());
+                resultHandler.handle(Future.failedFuture(reply.cause()));
+            }
+        });
+    }
+
+    /**
+     * Has to be called after the adapter was stored in the adapters and adapter_instances tables.
+     */
+    public synchronized void register(String name, String host, int port, JsonObject client) {
+        Map<String, JsonObject> updated = new HashMap<>(adapters);
+        JsonObject endpoint = toEndpoint(host, port, client);
+        JsonObject existing = adapters.get(name);
+        if (existing != null) {
+            endpoint.put("instances", existing.getJsonArray("instances").copy());
+        }
+        addInstance(endpoint, host, port);
+        updated.put(name, endpoint);
+        adapters = Collections.unmodifiableMap(updated);
+    }
+
+    /**
+     * Returns the endpoint ({"host", "port" of the latest registration, the optional client profile "client" and
+     * all registered "instances" [{"host", "port"}]) of the adapter for the data source type, or null if none is known.
+     * The returned object must not be modified.
+     */
+    public JsonObject get(String name) {
+        return adapters.get(name);
+    }
+
+    /**
+     * Like get, but falls back to the database for adapters that are not known yet and fails if none is registered.
+     */
+    public void lookup(String name, Handler<AsyncResult<JsonObject>> resultHandler) {
+        JsonObject adapter = adapters.get(name);
+        if (adapter != null) {
+            resultHandler.handle(Future.succeededFuture(adapter));
+            return;
+        }
+        DatabaseConnector.getInstance().readQuery(FINDBYNAME_QUERY, Tuple.tuple().addString(name), reply -> {
+            if (reply.failed()) {
+                LOGGER.error("Information for " + name + " could not be retrieved.", reply.cause());
+                resultHandler.handle(Future.failedFuture(reply.cause()));
+            } else if (reply.result().isEmpty()) {
+                LOGGER.info("Queried adapter not registered.");
+                resultHandler.handle(Future.failedFuture("Queried adapter not registered."));
+            } else {
+                JsonObject endpoint = toEndpoints(reply.result()).get(name);
+                synchronized (this) {
+                    Map<String, JsonObject> updated = new HashMap<>(adapters);
+                    updated.put(name, endpoint);
+                    adapters = Collections.unmodifiableMap(updated);
+                }
+                resultHandler.handle(Future.succeededFuture(endpoint));
+            }
+        });
+    }
+
+    /**
+     * The registered adapter names in the format of the adapters table, [{"name": ...}].
+     */
+    public JsonArray names() {
+        JsonArray names = new JsonArray();
+        for (String name : adapters.keySet()) {
+            names.add(new JsonObject().put("name", name));
+        }
+        return names;
+    }
+
+    /**
+     * Groups the rows of FINDALL_QUERY by adapter name. Adapters without a row in adapter_instances get their
+     * address in the adapters table as the only instance.
+     */
+    private Map<String, JsonObject> toEndpoints(List<JsonObject> rows) {
+        Map<String, JsonObject> endpoints = new HashMap<>();
+        for (JsonObject row : rows) {
+            JsonObject endpoint = endpoints.get(row.getString("name"));
+            if (endpoint == null) {
+                Object client = row.getValue("client_profile");
+                endpoint = toEndpoint(row.getString("host"), row.getInteger("port"), client instanceof JsonObject ? (JsonObject) client : null);
+                endpoints.put(row.getString("name"), endpoint);
+            }
+            if (row.getString("instance_host") != null) {
+                addInstance(endpoint, row.getString("instance_host"), row.getInteger("instance_port"));
+            }
+        }
+        for (JsonObject endpoint : endpoints.values()) {
+            if (endpoint.getJsonArray("instances").isEmpty()) {
+                addInstance(endpoint, endpoint.getString("host"), endpoint.getInteger("port"));
+            }
+        }
+        return endpoints;
+    }
+
+    private JsonObject toEndpoint(String host, int port, JsonObject client) {
+        JsonObject endpoint = new JsonObject().put("host", host).put("port", port).put("instances", new JsonArray());
+        if (client != null) {
+            endpoint.put("client", client);
+        }
+        return endpoint;
+    }
+
+    private void addInstance(JsonObject endpoint, String host, int port) {
+        JsonObject instance = new JsonObject().put("host", host).put("port", port);
+        if (!endpoint.getJsonArray("instances").contains(instance)) {
+            endpoint.getJsonArray("instances").add(instance);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package de.fraunhofer.fokus.ids.services.datasourceAdapter;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * The paused body of an adapter response handed out by DataSourceAdapterDownloadService.openFileStream.
+ * The transfer is finished when the body ended, failed or the response was reset, which releases the
+ * resources the request holds at the adapter client. A response that is not read has to be reset.
+ */
+public class AdapterResponse implements ReadStream<Buffer> {
+
+    private final HttpClientResponse response;
+    private final Promise<Void> finished = Promise.promise();
+
+    AdapterResponse(HttpClientResponse response) {
+        this.response = response;
+        response.endHandler(v -> finished.tryComplete());
+        response.exceptionHandler(finished::tryFail);
+    }
+
+    /**
+     * Completes once the transfer is finished. It only fails if the adapter or the connection to it failed, a reset
+     * by the reader is not a failure of the adapter.
+     */
+    Future<Void> finished() {
+        return finished.future();
+    }
+
+    void fail(Throwable cause) {
+        finished.tryFail(cause);
+    }
+
+    /**
+     * Aborts the transfer and closes the connection to the adapter.
+     */
+    public void reset() {
+        finished.tryComplete();
+        response.request().reset();
+    }
+
+    @Override
+    public AdapterResponse exceptionHandler(Handler<Throwable> handler) {
+        response.exceptionHandler(e -> {
+            finished.tryFail(e);
+            if (handler != null) {
+                handler.handle(e);
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public AdapterResponse handler(Handler<Buffer> handler) {
+        response.handler(handler);
+        return this;
+    }
+
+    @Override
+    public AdapterResponse pause() {
+        response.pause();
+        return this;
+    }
+
+    @Override
+    public AdapterResponse resume() {
+        response.resume();
+        return this;
+    }
+
+    @Override
+    public AdapterResponse fetch(long amount) {
+        response.fetch(amount);
+        return this;
+    }
+
+    @Override
+    public AdapterResponse endHandler(Handler<Void> endHandler) {
+        response.endHandler(v -> {
+            finished.tryComplete();
+            if (endHandler != null) {
+                endHandler.handle(v);
+            }
+        });
+        return this;
+    }
+}
@@ -1,70 +1,149 @@
 package de.fraunhofer.fokus.ids.services.datasourceAdapter;
 
-import de.fraunhofer.fokus.ids.persistence.util.DatabaseConnector;
 import io.vertx.config.ConfigRetriever;
 import io.vertx.config.ConfigRetrieverOptions;
 import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.*;
+import io.vertx.core.http.HttpClientRequest;
 import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.HttpResponse;
 import io.vertx.ext.web.codec.BodyCodec;
-import io.vertx.sqlclient.Tuple;
 
 public class DataSourceAdapterDownloadService {
     private Logger LOGGER = LoggerFactory.getLogger(DataSourceAdapterDownloadService.class.getName());
-    private WebClient webClient;
+    private AdapterClients adapterClients;
     private Vertx vertx;
-    private DatabaseConnector databaseConnector;
-	private static final String FINDBYNAME_QUERY = "SELECT host, port FROM adapters WHERE name= $1";
+    private AdapterRegistry adapterRegistry;
     
     public DataSourceAdapterDownloadService(Vertx vertx){
         this.vertx = vertx;
         create();
     }
     public void create() {
-        this.databaseConnector = DatabaseConnector.getInstance();
-        this.webClient = WebClient.create(vertx);
+        this.adapterRegistry = AdapterRegistry.getInstance();
+        this.adapterClients = AdapterClients.getInstance(vertx);
     }
 
-    private void download(int port, String host, String path, JsonObject payload, HttpServerResponse httpServerResponse) {
+    private void download(AdapterClient client, String path, JsonObject payload, HttpServerResponse httpServerResponse) {
         httpServerResponse.putHeader("Transfer-Encoding", "chunked");
         httpServerResponse.putHeader(HttpHeaders.CONTENT_DISPOSITION,"attachment; filename=\""
                 +payload.getJsonObject("dataAsset").getString("filename")+"\"");
 
-        webClient
-                .post(port, host, path)
-                .as(BodyCodec.pipe(httpServerResponse))
-                .sendJsonObject(payload, ar -> {
-                    if (ar.succeeded()) {
-                    	LOGGER.info(port + " " + host + " " + path);
-                        LOGGER.info("Status Code "+ar.result().statusCode());
-                    } else {
-                        LOGGER.error(ar.cause());
+        client.<HttpResponse<Void>>execute(promise -> {
+            AdapterInstance instance = client.select();
+            client.webClient()
+                    .post(instance.port(), instance.host(), path)
+                    .timeout(client.requestTimeout())
+                    .as(BodyCodec.pipe(httpServerResponse))
+                    .sendJsonObject(payload, AdapterClient.failOnServerError(instance.track(ar -> {
+                        if (ar.succeeded()) {
+                            LOGGER.info(instance.port() + " " + instance.host() + " " + path);
+                        }
+                        promise.handle(ar);
+                    })));
+        }, ar -> {
+            if (ar.succeeded()) {
+                LOGGER.info("Status Code "+ar.result().statusCode());
+            } else {
+                LOGGER.error(ar.cause());
+                answerUnavailable(ar.cause(), httpServerResponse);
+            }
+        });
+    }
 
-                    }
-                });
+    /**
+     * Calls rejected by the circuit breaker or the bulkhead never reached the adapter, nothing has been written yet.
+     */
+    private void answerUnavailable(Throwable cause, HttpServerResponse httpServerResponse) {
+        if (AdapterClient.isUnavailable(cause) && !httpServerResponse.headWritten()) {
+            httpServerResponse.headers().remove(HttpHeaders.CONTENT_DISPOSITION);
+            httpServerResponse.setStatusCode(AdapterClient.UNAVAILABLE).end();
+        }
     }
 
 
-    public void getFile(String dataSourceType, JsonObject request, HttpServerResponse httpServerResponse) {
-        getAdapter(dataSourceType, reply -> {
+    /**
+     * The adapter endpoint ({"host", "port"}) is looked up by the data source type if it is not passed, e.g. from an ArtifactRoute.
+     */
+    public void getFile(String dataSourceType, JsonObject adapter, JsonObject request, HttpServerResponse httpServerResponse) {
+        resolveAdapter(dataSourceType, adapter, reply -> {
             if(reply.succeeded()) {
-                download(reply.result().getInteger("port"), reply.result().getString("host"), "/getFile/", request,httpServerResponse);
+                download(adapterClients.client(dataSourceType, reply.result()), "/getFile/", request,httpServerResponse);
             } else {
                 LOGGER.error(reply.cause());
             }
         });
     }
 
+    /**
+     * Requests the file from the adapter and hands out the response paused, so that the caller can pipe
+     * the body to its client without buffering it in memory or on disk. The call keeps its slot in the bulkhead of
+     * the adapter and counts as outstanding on the adapter instance until the body ended or failed, or the response
+     * was reset.
+     */
+    public void openFileStream(String dataSourceType, JsonObject adapter, JsonObject request, Handler<AsyncResult<AdapterResponse>> resultHandler) {
+        resolveAdapter(dataSourceType, adapter, reply -> {
+            if (reply.succeeded()) {
+                AdapterClient client = adapterClients.client(dataSourceType, reply.result());
+                client.<AdapterResponse>executeStreaming((responsePromise, released) -> {
+                    AdapterInstance instance = client.select();
+                    Promise<Void> transfer = Promise.promise();
+                    transfer.future().onComplete(instance.track(ar -> {}));
+                    responsePromise.future().onComplete(ar -> {
+                        if (ar.failed()) {
+                            transfer.tryFail(ar.cause());
+                        }
+                    });
+                    HttpClientRequest adapterRequest = client.httpClient().request(HttpMethod.POST, instance.port(),
+                            instance.host(), "/getFile/");
+                    adapterRequest.setTimeout(client.requestTimeout());
+                    adapterRequest.handler(response -> {
+                        if (released.future().isComplete()) {
+                            LOGGER.error("Adapter answered after the call was given up.");
+                            adapterRequest.reset();
+                            responsePromise.tryFail("Adapter answered after the call was given up.");
+                        } else if (response.statusCode() == 200) {
+                            response.pause();
+                            AdapterResponse adapterResponse = new AdapterResponse(response);
+                            adapterRequest.exceptionHandler(adapterResponse::fail);
+                            adapterResponse.finished().onComplete(ar -> {
+                                released.tryComplete();
+                                if (ar.succeeded()) {
+                                    transfer.tryComplete();
+                                } else {
+                                    transfer.tryFail(ar.cause());
+                                }
+                            });
+                            responsePromise.tryComplete(adapterResponse);
+                        } else {
+                            LOGGER.error("Adapter answered with status code " + response.statusCode());
+                            adapterRequest.reset();
+                            responsePromise.tryFail("Adapter answered with status code " + response.statusCode());
+                        }
+                    });
+                    adapterRequest.exceptionHandler(e -> {
+                        if (responsePromise.tryFail(e)) {
+                            LOGGER.error(e);
+                        }
+                    });
+                    adapterRequest.putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                            .end(request.toBuffer());
+                }, resultHandler);
+            } else {
+                LOGGER.error(reply.cause());
+                resultHandler.handle(Future.failedFuture(reply.cause()));
+            }
+        });
+    }
+
     public void downloadFile(String dataSourceType, String resourceId, String dataAssetId, String fileName, HttpServerResponse response){
         getAdapter(dataSourceType, result -> {
             if(result.succeeded()){
-                int port = result.result().getInteger("port");
-                String host = result.result().getString("host");
                 JsonObject linkData = new JsonObject()
                         .put("resourceId", resourceId)
                         .put("dataAssetId", dataAssetId)
@@ -74,16 +153,21 @@ public class DataSourceAdapterDownloadService {
                         .putHeader("content-type", "multipart/form-data;charset=UTF-8")
                         .putHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
 
-                webClient.post(port, host, "/resource")
-                        .as(BodyCodec.pipe(response))
-                        .sendJsonObject(linkData,
-                        adapterReply -> {
-                            if (adapterReply.succeeded()) {
-                                LOGGER.info("File sent to client. response status code is: " + adapterReply.result().statusCode());
-                            } else {
-                                LOGGER.error("Some thing went wrong. Message is: " + adapterReply.cause().getMessage());
-                            }
-                        });
+                AdapterClient client = adapterClients.client(dataSourceType, result.result());
+                client.<HttpResponse<Void>>execute(promise -> {
+                    AdapterInstance instance = client.select();
+                    client.webClient().post(instance.port(), instance.host(), "/resource")
+                            .timeout(client.requestTimeout())
+                            .as(BodyCodec.pipe(response))
+                            .sendJsonObject(linkData, AdapterClient.failOnServerError(instance.track(promise)));
+                }, adapterReply -> {
+                    if (adapterReply.succeeded()) {
+                        LOGGER.info("File sent to client. response status code is: " + adapterReply.result().statusCode());
+                    } else {
+                        LOGGER.error("Some thing went wrong. Message is: " + adapterReply.cause().getMessage());
+                        answerUnavailable(adapterReply.cause(), response);
+                    }
+                });
             }
             else{
                 this.LOGGER.error("Could not get adapter data from Database");
@@ -91,23 +175,15 @@ public class DataSourceAdapterDownloadService {
         });
     }
     
-    private void getAdapter(String name, Handler<AsyncResult<JsonObject>> resultHandler) {
-
-		databaseConnector.query(FINDBYNAME_QUERY, Tuple.tuple().addString(name), reply -> {
-			if (reply.succeeded()) {
-				try {
-					JsonObject jsonObject = new JsonObject().put("host", reply.result().get(0).getString("host"))
-							.put("port", reply.result().get(0).getLong("port"));
-					resultHandler.handle(Future.succeededFuture(jsonObject));
-				} catch (IndexOutOfBoundsException e) {
-					LOGGER.info("Queried adapter not registered.");
-					resultHandler.handle(Future.failedFuture("Queried adapter not registered."));
-				}
-			} else {
-				LOGGER.error("Information for " + name + " could not be retrieved.", reply.cause());
-				resultHandler.handle(Future.failedFuture(reply.cause()));
-			}
-		});
+    private void resolveAdapter(String name, JsonObject adapter, Handler<AsyncResult<JsonObject>> resultHandler) {
+        if (adapter != null) {
+            resultHandler.handle(Future.succeededFuture(adapter));
+        } else {
+            getAdapter(name, resultHandler);
+        }
+    }
 
-	}
+    private void getAdapter(String name, Handler<AsyncResult<JsonObject>> resultHandler) {
+        adapterRegistry.lookup(name, resultHandler);
+    }
 }
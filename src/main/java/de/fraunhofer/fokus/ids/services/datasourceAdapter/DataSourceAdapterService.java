@@ -9,7 +9,6 @@ import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.web.client.WebClient;
 /**
  * @author Vincent Bohlen, vincent.bohlen@fokus.fraunhofer.de
  */
@@ -30,8 +29,8 @@ public interface DataSourceAdapterService {
     DataSourceAdapterService createDataAsset(String dataSourceType, JsonObject message, Handler<AsyncResult<JsonObject>> resultHandler);
 
     @GenIgnore
-    static DataSourceAdapterService create(Vertx vertx, WebClient webClient, String tempFileRootPath, Handler<AsyncResult<DataSourceAdapterService>> readyHandler) {
-        return new DataSourceAdapterServiceImpl(vertx, webClient, tempFileRootPath, readyHandler);
+    static DataSourceAdapterService create(Vertx vertx, String tempFileRootPath, Handler<AsyncResult<DataSourceAdapterService>> readyHandler) {
+        return new DataSourceAdapterServiceImpl(vertx, tempFileRootPath, readyHandler);
     }
 
     @GenIgnore
@@ -1,24 +1,37 @@
 package de.fraunhofer.fokus.ids.services.datasourceAdapter;
 
+import de.fraunhofer.fokus.ids.main.ApplicationConfig;
+import de.fraunhofer.fokus.ids.models.SpooledFile;
 import io.vertx.config.ConfigRetriever;
 import io.vertx.config.ConfigRetrieverOptions;
 import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.file.AsyncFile;
 import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.multipart.MultipartForm;
 import io.vertx.ext.web.codec.BodyCodec;
-import io.vertx.sqlclient.Tuple;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
-import de.fraunhofer.fokus.ids.persistence.util.DatabaseConnector;
 
 /**
  * @author Vincent Bohlen, vincent.bohlen@fokus.fraunhofer.de
@@ -27,18 +40,22 @@ public class DataSourceAdapterServiceImpl implements DataSourceAdapterService {
 
 	private Logger LOGGER = LoggerFactory.getLogger(DataSourceAdapterServiceImpl.class.getName());
 
-	private WebClient webClient;
+	private AdapterClients adapterClients;
 	private Vertx vertx;
 	private String tempFileRootPath;
+	private String uploadDirectory;
 	private String apikey;
-	private DatabaseConnector databaseConnector;
-	private static final String FINDBYNAME_QUERY = "SELECT host, port FROM adapters WHERE name= $1";
+	private AdapterRegistry adapterRegistry;
+	private static final Set<Integer> MULTIPART_UNSUPPORTED = new HashSet<>(Arrays.asList(404, 405, 415));
+	private final Set<String> jsonOnlyAdapters = ConcurrentHashMap.newKeySet();
 
-	public DataSourceAdapterServiceImpl(Vertx vertx, WebClient webClient, String tempFileRootPath,
+	public DataSourceAdapterServiceImpl(Vertx vertx, String tempFileRootPath,
 			Handler<AsyncResult<DataSourceAdapterService>> readyHandler) {
-		this.webClient = webClient;
-		this.databaseConnector = DatabaseConnector.getInstance();
+		this.adapterClients = AdapterClients.getInstance(vertx);
+		this.adapterRegistry = AdapterRegistry.getInstance();
 		this.tempFileRootPath = tempFileRootPath;
+		this.uploadDirectory = Paths.get(tempFileRootPath != null ? tempFileRootPath : ApplicationConfig.DEFAULT_REPOSITORY,
+				ApplicationConfig.UPLOAD_DIRECTORY).toString();
 		this.vertx = vertx;
 		
 		//  ConfigStoreOptions confStore = new ConfigStoreOptions()
@@ -59,66 +76,66 @@ public class DataSourceAdapterServiceImpl implements DataSourceAdapterService {
 		readyHandler.handle(Future.succeededFuture(this));
 	}
 
-	private void post(int port, String host, String path, JsonObject payload,
+	private void post(AdapterClient client, String path, JsonObject payload,
 			Handler<AsyncResult<JsonObject>> resultHandler) {
-		webClient.post(port, host, path).sendJsonObject(payload, ar -> {
+		AdapterInstance instance = client.select();
+		client.webClient().post(instance.port(), instance.host(), path).timeout(client.requestTimeout()).sendJsonObject(payload, AdapterClient.failOnServerError(instance.track(ar -> {
 			if (ar.succeeded()) {
 				LOGGER.debug(ar.result().bodyAsString());
-				resultHandler.handle(Future.succeededFuture(ar.result().bodyAsJsonObject()));
+				resultHandler.handle(bodyAsJsonObject(ar.result()));
 			} else {
 				LOGGER.error(ar.cause());
 				resultHandler.handle(Future.failedFuture(ar.cause()));
 			}
-		});
+		})));
 	}
 
-	private void download(int port, String host, String path, JsonObject payload,
+	private void download(AdapterClient client, String path, JsonObject payload,
 			Handler<AsyncResult<String>> resultHandler) {
 		String fileName = tempFileRootPath + UUID.randomUUID().toString();
 		AsyncFile asyncFile = vertx.fileSystem().openBlocking(fileName, new OpenOptions());
-		webClient.post(port, host, path).as(BodyCodec.pipe(asyncFile)).sendJsonObject(payload, ar -> {
+		AdapterInstance instance = client.select();
+		client.webClient().post(instance.port(), instance.host(), path).timeout(client.requestTimeout()).as(BodyCodec.pipe(asyncFile))
+				.sendJsonObject(payload, AdapterClient.failOnServerError(instance.track(ar -> {
 			if (ar.succeeded()) {
 				resultHandler.handle(Future.succeededFuture(fileName));
 			} else {
 				LOGGER.error(ar.cause());
 				resultHandler.handle(Future.failedFuture(ar.cause()));
 			}
-		});
+		})));
 	}
 
 	private void getAdapters(String name, Handler<AsyncResult<JsonObject>> resultHandler) {
-
-		databaseConnector.query(FINDBYNAME_QUERY, Tuple.tuple().addString(name), reply -> {
-			if (reply.succeeded()) {
-				try {
-					JsonObject jsonObject = new JsonObject().put("host", reply.result().get(0).getString("host"))
-							.put("port", reply.result().get(0).getLong("port"));
-					resultHandler.handle(Future.succeededFuture(jsonObject));
-				} catch (IndexOutOfBoundsException e) {
-					LOGGER.info("Queried adapter not registered.");
-					resultHandler.handle(Future.failedFuture("Queried adapter not registered."));
-				}
-			} else {
-				LOGGER.error("Information for " + name + " could not be retrieved.", reply.cause());
-				resultHandler.handle(Future.failedFuture(reply.cause()));
-			}
-		});
-
+		adapterRegistry.lookup(name, resultHandler);
 	}
 
-	private void get(int port, String host, String path, Handler<AsyncResult<JsonObject>> resultHandler) {
+	private void get(AdapterClient client, String path, Handler<AsyncResult<JsonObject>> resultHandler) {
 
-		webClient.get(port, host, path).bearerTokenAuthentication(apikey).send(ar -> {
+		AdapterInstance instance = client.select();
+		client.webClient().get(instance.port(), instance.host(), path).timeout(client.requestTimeout()).bearerTokenAuthentication(apikey).send(AdapterClient.failOnServerError(instance.track(ar -> {
 			if (ar.succeeded()) {
 				LOGGER.debug(ar.result().bodyAsString());
-				resultHandler.handle(Future.succeededFuture(ar.result().bodyAsJsonObject()));
+				resultHandler.handle(bodyAsJsonObject(ar.result()));
 			} else {
 				LOGGER.error(ar.cause());
 				resultHandler.handle(Future.failedFuture(ar.cause()));
 			}
-		});
+		})));
+
 
+	}
 
+	/**
+	 * Fails instead of throwing if the adapter did not answer with a JSON object, so that the call is completed.
+	 */
+	private Future<JsonObject> bodyAsJsonObject(HttpResponse<Buffer> response) {
+		try {
+			return Future.succeededFuture(response.bodyAsJsonObject());
+		} catch (DecodeException | ClassCastException e) {
+			LOGGER.error("Adapter answered with an invalid JSON object.", e);
+			return Future.failedFuture(e);
+		}
 	}
 
 	@Override
@@ -128,7 +145,8 @@ public class DataSourceAdapterServiceImpl implements DataSourceAdapterService {
 			if (reply.succeeded()) {
 				LOGGER.debug("Port: " + reply.result().getInteger("port"));
 				LOGGER.debug("Host: " + reply.result().getString("host"));
-				download(reply.result().getInteger("port"), reply.result().getString("host"), "/getFile/", request,
+				AdapterClient client = adapterClients.client(dataSourceType, reply.result());
+				client.<String>execute(promise -> download(client, "/getFile/", request, promise),
 						adapterReply -> {
 					if (adapterReply.succeeded()) {
 						resultHandler.handle(Future.succeededFuture(adapterReply.result()));
@@ -151,7 +169,8 @@ public class DataSourceAdapterServiceImpl implements DataSourceAdapterService {
 			if (reply.succeeded()) {
 				LOGGER.debug("Port: " + reply.result().getInteger("port"));
 				LOGGER.debug("Host: " + reply.result().getString("host"));
-				get(reply.result().getInteger("port"), reply.result().getString("host"), "/supported/",
+				AdapterClient client = adapterClients.client(dataSourceType, reply.result());
+				client.<JsonObject>execute(promise -> get(client, "/supported/", promise),
 						adapterReply -> {
 							if (adapterReply.succeeded()) {
 								resultHandler.handle(Future.succeededFuture(adapterReply.result()));
@@ -175,7 +194,8 @@ public class DataSourceAdapterServiceImpl implements DataSourceAdapterService {
 			if (reply.succeeded()) {
 				LOGGER.debug("Port: " + reply.result().getInteger("port"));
 				LOGGER.debug("Host: " + reply.result().getString("host"));
-				get(reply.result().getInteger("port"), reply.result().getString("host"), "/delete/" + resourceId,
+				AdapterClient client = adapterClients.client(dataSourceType, reply.result());
+				client.<JsonObject>execute(promise -> get(client, "/delete/" + resourceId, promise),
 						adapterReply -> {
 							if (adapterReply.succeeded()) {
 								resultHandler.handle(Future.succeededFuture(adapterReply.result()));
@@ -192,24 +212,145 @@ public class DataSourceAdapterServiceImpl implements DataSourceAdapterService {
 		return this;
 	}
 
+	/**
+	 * Sends the message without the file references as form attribute "message" and every spooled file
+	 * as a "file" part. The parts are streamed from disk, nothing is base64 encoded or held in memory.
+	 */
+	private void postMultipart(AdapterClient client, String path, JsonObject message,
+			Handler<AsyncResult<HttpResponse<Buffer>>> resultHandler) {
+		JsonObject metadata = message.copy();
+		JsonArray references = (JsonArray) metadata.remove("files");
+		JsonArray fileMetadata = new JsonArray();
+		MultipartForm form = MultipartForm.create();
+		if (references != null) {
+			for (int i = 0; i < references.size(); i++) {
+				JsonObject reference = references.getJsonObject(i);
+				String contentType = reference.getString("contentType", "application/octet-stream");
+				form.binaryFileUpload("file", reference.getString("name"), reference.getString("path"), contentType);
+				JsonObject file = reference.copy();
+				file.remove("path");
+				fileMetadata.add(file);
+			}
+		}
+		metadata.put("files", fileMetadata);
+		form.attribute("message", metadata.encode());
+		AdapterInstance instance = client.select();
+		client.webClient().post(instance.port(), instance.host(), path).timeout(client.requestTimeout()).sendMultipartForm(form, AdapterClient.failOnServerError(instance.track(ar -> {
+			if (ar.succeeded()) {
+				resultHandler.handle(Future.succeededFuture(ar.result()));
+			} else {
+				LOGGER.error(ar.cause());
+				resultHandler.handle(Future.failedFuture(ar.cause()));
+			}
+		})));
+	}
+
+	private void createAsJson(AdapterClient client, JsonObject message, Handler<AsyncResult<JsonObject>> resultHandler) {
+		inlineFiles(message, inlineReply -> {
+			if (inlineReply.succeeded()) {
+				post(client, "/create/", inlineReply.result(), resultHandler);
+			} else {
+				LOGGER.error(inlineReply.cause());
+				resultHandler.handle(Future.failedFuture(inlineReply.cause()));
+			}
+		});
+	}
+
+	/**
+	 * Legacy adapters expect the file content inline, so the spooled files are read asynchronously
+	 * right before the JSON request is sent.
+	 */
+	private void inlineFiles(JsonObject message, Handler<AsyncResult<JsonObject>> resultHandler) {
+		JsonArray references = message.getJsonArray("files", new JsonArray());
+		List<Future> fileFutures = new ArrayList<>();
+		for (int i = 0; i < references.size(); i++) {
+			JsonObject reference = references.getJsonObject(i);
+			Promise<JsonObject> filePromise = Promise.promise();
+			fileFutures.add(filePromise.future());
+			vertx.fileSystem().readFile(reference.getString("path"), fileReply -> {
+				if (fileReply.succeeded()) {
+					filePromise.complete(new JsonObject()
+							.put("name", reference.getString("name"))
+							.put("bytes", fileReply.result().getBytes())
+							.put("charSet", reference.getString("charSet"))
+							.put("contentTransferEncoding", reference.getString("contentTransferEncoding"))
+							.put("size", reference.getLong("size"))
+							.put("contentType", reference.getString("contentType")));
+				} else {
+					filePromise.fail(fileReply.cause());
+				}
+			});
+		}
+		CompositeFuture.all(fileFutures).onComplete(ac -> {
+			if (ac.succeeded()) {
+				JsonArray files = new JsonArray();
+				for (Future fileFuture : fileFutures) {
+					files.add(fileFuture.result());
+				}
+				resultHandler.handle(Future.succeededFuture(message.copy().put("files", files)));
+			} else {
+				resultHandler.handle(Future.failedFuture(ac.cause()));
+			}
+		});
+	}
+
+	/**
+	 * The files are read from disk and sent to the adapter, so only references to spooled uploads are accepted.
+	 */
+	private boolean referencesUploadsOnly(JsonObject message) {
+		JsonArray references = message.getJsonArray("files", new JsonArray());
+		for (int i = 0; i < references.size(); i++) {
+			if (!SpooledFile.isInUploadDirectory(references.getJsonObject(i).getString("path"), uploadDirectory)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public DataSourceAdapterService createDataAsset(String dataSourceType, JsonObject message,
 			Handler<AsyncResult<JsonObject>> resultHandler) {
+		if (!referencesUploadsOnly(message)) {
+			LOGGER.error("File reference outside of the upload directory, data asset is not created.");
+			resultHandler.handle(Future.failedFuture("File reference outside of the upload directory."));
+			return this;
+		}
 
 		getAdapters(dataSourceType, reply -> {
 
 			if (reply.succeeded()) {
 				LOGGER.debug("Port: " + reply.result().getInteger("port"));
 				LOGGER.debug("Host: " + reply.result().getString("host"));
-				post(reply.result().getInteger("port"), reply.result().getString("host"), "/create/", message,
-						adapterReply -> {
-							if (adapterReply.succeeded()) {
-								resultHandler.handle(Future.succeededFuture(adapterReply.result()));
+				AdapterClient client = adapterClients.client(dataSourceType, reply.result());
+				Handler<AsyncResult<JsonObject>> adapterReplyHandler = adapterReply -> {
+					if (adapterReply.succeeded()) {
+						resultHandler.handle(Future.succeededFuture(adapterReply.result()));
+					} else {
+						LOGGER.error(adapterReply.cause());
+						resultHandler.handle(Future.failedFuture(adapterReply.cause()));
+					}
+				};
+				client.<JsonObject>execute(promise -> {
+					if (jsonOnlyAdapters.contains(dataSourceType)) {
+						createAsJson(client, message, promise);
+					} else {
+						postMultipart(client, "/create/multipart/", message, multipartReply -> {
+							if (multipartReply.succeeded()) {
+								HttpResponse<Buffer> response = multipartReply.result();
+								if (MULTIPART_UNSUPPORTED.contains(response.statusCode())) {
+									LOGGER.info("Adapter " + dataSourceType + " does not support multipart creation, falling back to JSON.");
+									jsonOnlyAdapters.add(dataSourceType);
+									createAsJson(client, message, promise);
+								} else {
+									LOGGER.debug(response.bodyAsString());
+									promise.handle(bodyAsJsonObject(response));
+								}
 							} else {
-								LOGGER.error(adapterReply.cause());
-								resultHandler.handle(Future.failedFuture(adapterReply.cause()));
+								promise.fail(multipartReply.cause());
 							}
 						});
+					}
+				}, adapterReplyHandler);
 			} else {
 				LOGGER.error(reply.cause());
 				resultHandler.handle(Future.failedFuture(reply.cause()));
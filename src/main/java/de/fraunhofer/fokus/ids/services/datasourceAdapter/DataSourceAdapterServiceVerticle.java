@@ -1,15 +1,11 @@
 package de.fraunhofer.fokus.ids.services.datasourceAdapter;
 
 import de.fraunhofer.fokus.ids.models.Constants;
-import io.vertx.config.ConfigRetriever;
-import io.vertx.config.ConfigRetrieverOptions;
-import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import io.vertx.ext.web.client.WebClient;
 import io.vertx.serviceproxy.ServiceBinder;
 /**
  * @author Vincent Bohlen, vincent.bohlen@fokus.fraunhofer.de
@@ -20,33 +16,17 @@ public class DataSourceAdapterServiceVerticle extends AbstractVerticle {
 
     @Override
     public void start(Promise<Void> startPromise) {
-        WebClient webClient = WebClient.create(vertx);
-
-        // ConfigStoreOptions confStore = new ConfigStoreOptions()
-        //         .setType("env");
-
-        // ConfigRetrieverOptions options = new ConfigRetrieverOptions().addStore(confStore);
-
-        ConfigRetriever retriever = ConfigRetriever.create(vertx);
-
-        retriever.getConfig(ar -> {
-            if (ar.succeeded()) {
-                DataSourceAdapterService.create(vertx, webClient, ar.result().getString("REPOSITORY"),  ready -> {
-                    if (ready.succeeded()) {
-                        ServiceBinder binder = new ServiceBinder(vertx);
-                        binder
-                                .setAddress(Constants.DATASOURCEADAPTER_SERVICE)
-                                .register(DataSourceAdapterService.class, ready.result());
-                        LOGGER.info("Datasourceadapterservice successfully started.");
-                        startPromise.complete();
-                    } else {
-                        LOGGER.error(ready.cause());
-                        startPromise.fail(ready.cause());
-                    }
-                });
+        DataSourceAdapterService.create(vertx, config().getString("REPOSITORY"),  ready -> {
+            if (ready.succeeded()) {
+                ServiceBinder binder = new ServiceBinder(vertx);
+                binder
+                        .setAddress(Constants.DATASOURCEADAPTER_SERVICE)
+                        .register(DataSourceAdapterService.class, ready.result());
+                LOGGER.info("Datasourceadapterservice successfully started.");
+                startPromise.complete();
             } else {
-                LOGGER.error(ar.cause());
-                startPromise.fail(ar.cause());
+                LOGGER.error(ready.cause());
+                startPromise.fail(ready.cause());
             }
         });
     }
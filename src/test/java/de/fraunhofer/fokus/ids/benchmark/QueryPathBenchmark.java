@@ -0,0 +1,175 @@
+package de.fraunhofer.fokus.ids.benchmark;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the two ways DatabaseConnector ran single statements: checking out a connection, running the prepared
+ * statement on it and closing it again (before user-013), against running the prepared statement directly on the
+ * pool (after). The statement is a primary key lookup like FINDBYDISTRIBUTIONID_QUERY on a table of its own.
+ *
+ * Needs a Postgres the user may create tables in, e.g. the one of docker-compose_build.yml. Settings are system
+ * properties: host (localhost), port (5432), database (ids), user (ids), password (ids), maxPoolSize (5),
+ * rows (10000), requests (100000) and concurrency (64). Run with
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=de.fraunhofer.fokus.ids.benchmark.QueryPathBenchmark
+ */
+public class QueryPathBenchmark {
+
+    private static final String TABLE = "benchmark_distribution";
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE
+            + " (id BIGSERIAL PRIMARY KEY, resourceid TEXT, datasetid TEXT, filename TEXT, filetype TEXT)";
+    private static final String FILL_TABLE = "INSERT INTO " + TABLE + " (resourceid, datasetid, filename, filetype) "
+            + "SELECT md5(i::text), md5((i % 100)::text), 'file' || i || '.csv', 'csv' FROM generate_series(1, $1) i";
+    private static final String DROP_TABLE = "DROP TABLE IF EXISTS " + TABLE;
+    private static final String FINDBYID_QUERY = "SELECT * FROM " + TABLE + " WHERE id = $1";
+
+    private interface Lookup {
+        void run(long id, Handler<AsyncResult<Void>> resultHandler);
+    }
+
+    private static class Result {
+        private final long[] latencies;
+        private long elapsed;
+
+        private Result(int requests) {
+            this.latencies = new long[requests];
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = Integer.getInteger("rows", 10000);
+        int requests = Integer.getInteger("requests", 100000);
+        int concurrency = Integer.getInteger("concurrency", 64);
+        int maxPoolSize = Integer.getInteger("maxPoolSize", 5);
+
+        Vertx vertx = Vertx.vertx();
+        PgConnectOptions connectOptions = new PgConnectOptions()
+                .setHost(System.getProperty("host", "localhost"))
+                .setPort(Integer.getInteger("port", 5432))
+                .setDatabase(System.getProperty("database", "ids"))
+                .setUser(System.getProperty("user", "ids"))
+                .setPassword(System.getProperty("password", "ids"))
+                .setCachePreparedStatements(true)
+                .setPreparedStatementCacheMaxSize(256)
+                .setPipeliningLimit(256);
+        PgPool pool = PgPool.pool(vertx, connectOptions, new PoolOptions().setMaxSize(maxPoolSize));
+
+        Lookup checkout = (id, resultHandler) -> pool.getConnection(connectionReply -> {
+            if (connectionReply.failed()) {
+                resultHandler.handle(Future.failedFuture(connectionReply.cause()));
+                return;
+            }
+            SqlConnection connection = connectionReply.result();
+            connection.preparedQuery(FINDBYID_QUERY).execute(Tuple.of(id), queryReply -> {
+                connection.close();
+                resultHandler.handle(queryReply.succeeded() ? Future.succeededFuture() : Future.failedFuture(queryReply.cause()));
+            });
+        });
+        Lookup pooled = (id, resultHandler) -> pool.preparedQuery(FINDBYID_QUERY).execute(Tuple.of(id), queryReply ->
+                resultHandler.handle(queryReply.succeeded() ? Future.succeededFuture() : Future.failedFuture(queryReply.cause())));
+
+        try {
+            await(statement(pool, DROP_TABLE, Tuple.tuple()));
+            await(statement(pool, CREATE_TABLE, Tuple.tuple()));
+            await(statement(pool, FILL_TABLE, Tuple.of(rows)));
+            System.out.println("Lookups of " + rows + " rows, " + requests + " requests, " + concurrency
+                    + " in flight, pool of " + maxPoolSize + " connections.");
+            for (int round = 0; round < 2; round++) {
+                String label = round == 0 ? "warmup " : "";
+                report(label + "checkout, prepare, close", await(run(vertx, checkout, rows, requests, concurrency)));
+                report(label + "pooled preparedQuery    ", await(run(vertx, pooled, rows, requests, concurrency)));
+            }
+        } finally {
+            await(statement(pool, DROP_TABLE, Tuple.tuple()));
+            pool.close();
+            vertx.close();
+        }
+    }
+
+    /**
+     * Keeps concurrency lookups in flight until requests lookups are done, latencies are in microseconds.
+     */
+    private static Future<Result> run(Vertx vertx, Lookup lookup, int rows, int requests, int concurrency) {
+        Promise<Result> promise = Promise.promise();
+        Result result = new Result(requests);
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        long start = System.nanoTime();
+        vertx.runOnContext(v -> {
+            for (int i = 0; i < concurrency; i++) {
+                next(lookup, rows, result, started, finished, start, promise);
+            }
+        });
+        return promise.future();
+    }
+
+    private static void next(Lookup lookup, int rows, Result result, AtomicInteger started, AtomicInteger finished,
+                             long start, Promise<Result> promise) {
+        int index = started.getAndIncrement();
+        if (index >= result.latencies.length) {
+            return;
+        }
+        long begin = System.nanoTime();
+        lookup.run(1 + index % rows, ar -> {
+            if (ar.failed()) {
+                promise.tryFail(ar.cause());
+                return;
+            }
+            result.latencies[index] = (System.nanoTime() - begin) / 1000;
+            if (finished.incrementAndGet() == result.latencies.length) {
+                result.elapsed = (System.nanoTime() - start) / 1000;
+                promise.tryComplete(result);
+            } else {
+                next(lookup, rows, result, started, finished, start, promise);
+            }
+        });
+    }
+
+    private static void report(String label, Result result) {
+        long[] sorted = result.latencies.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long latency : sorted) {
+            total += latency;
+        }
+        System.out.println(label + ": " + sorted.length * 1000000L / Math.max(result.elapsed, 1) + " lookups/s, mean "
+                + total / sorted.length + " us, p50 " + sorted[sorted.length / 2]
+                + " us, p99 " + sorted[(int) (sorted.length * 0.99)] + " us");
+    }
+
+    private static Future<Void> statement(PgPool pool, String sql, Tuple params) {
+        Promise<Void> promise = Promise.promise();
+        pool.preparedQuery(sql).execute(params, ar -> {
+            if (ar.succeeded()) {
+                promise.complete();
+            } else {
+                promise.fail(ar.cause());
+            }
+        });
+        return promise.future();
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.onComplete(ar -> {
+            if (ar.succeeded()) {
+                result.complete(ar.result());
+            } else {
+                result.completeExceptionally(ar.cause());
+            }
+        });
+        return result.get();
+    }
+}
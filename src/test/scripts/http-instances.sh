@@ -0,0 +1,42 @@
+#!/bin/sh
+# Compares the throughput of the connector with one HttpServerVerticle instance against HTTP_INSTANCES instances.
+# The connector is started once per setting with START, loaded with wrk on /about and /data/$DATA_ID, and stopped.
+#
+#   START="java -jar target/public-data-space-connector-2.1.0-fat.jar" DATA_ID=1 src/test/scripts/http-instances.sh
+#
+# Settings: START (required), URL (http://localhost:8080), DATA_ID (optional, /data is skipped without it),
+# INSTANCES (number of cores), THREADS (8), CONNECTIONS (128) and DURATION (60s).
+set -e
+
+: "${START:?START has to be the command that starts the connector}"
+URL=${URL:-http://localhost:8080}
+INSTANCES=${INSTANCES:-$(nproc)}
+THREADS=${THREADS:-8}
+CONNECTIONS=${CONNECTIONS:-128}
+DURATION=${DURATION:-60s}
+
+command -v wrk >/dev/null || { echo "wrk is required" >&2; exit 1; }
+
+run() {
+    instances=$1
+    # START is split into words on purpose, so that $! is the connector itself and not a wrapping shell.
+    HTTP_INSTANCES=$instances $START >"connector-$instances.log" 2>&1 &
+    pid=$!
+    # The connector answers 503 until all services are deployed.
+    until [ "$(curl -s -o /dev/null -w '%{http_code}' "$URL/about")" = "200" ]; do
+        kill -0 $pid 2>/dev/null || { echo "Connector did not start, see connector-$instances.log" >&2; exit 1; }
+        sleep 1
+    done
+    for path in /about ${DATA_ID:+/data/$DATA_ID}; do
+        result=$(wrk -t"$THREADS" -c"$CONNECTIONS" -d"$DURATION" --latency "$URL$path")
+        requests=$(echo "$result" | awk '/Requests\/sec/ {print $2}')
+        p99=$(echo "$result" | awk '$1 == "99%" {print $2}')
+        printf '%-10s %-12s %12s %10s\n' "$instances" "$path" "$requests" "$p99"
+    done
+    kill $pid
+    wait $pid 2>/dev/null || true
+}
+
+printf '%-10s %-12s %12s %10s\n' "instances" "path" "requests/s" "p99"
+run 1
+run "$INSTANCES"